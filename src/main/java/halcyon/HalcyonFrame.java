@@ -2,7 +2,8 @@ package halcyon;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import halcyon.model.node.HalcyonNodeType;
 import javafx.application.Application;
@@ -23,6 +24,8 @@ import javafx.stage.Stage;
 
 import halcyon.controller.ViewManager;
 import halcyon.model.collection.HalcyonNodeRepository;
+import halcyon.model.collection.NodeQuery;
+import halcyon.model.collection.NodeView;
 import halcyon.model.collection.ObservableCollection;
 import halcyon.model.node.HalcyonNodeInterface;
 import halcyon.view.TreePanel;
@@ -43,9 +46,9 @@ public class HalcyonFrame extends Application
 	final private HalcyonNodeRepository mNodes;
 
 	final private ObservableCollection< DockNode > mConsoleDockNodes =
-			new ObservableCollection<>();
+			new ObservableCollection<>( DockNode::getTitle );
 	final private ObservableCollection< DockNode > mToolBarDockNodes =
-			new ObservableCollection<>();
+			new ObservableCollection<>( DockNode::getTitle );
 
 	private TreePanel mTreePanel;
 
@@ -129,31 +132,51 @@ public class HalcyonFrame extends Application
 	}
 
 	/**
-	 * Remove a Halcyon node.
+	 * Add Halcyon nodes at once, the views being updated once for all of them.
+	 * @param nodes the nodes
+	 */
+	public void addNodes( Collection< ? extends HalcyonNodeInterface > nodes )
+	{
+		mNodes.addAll( nodes );
+	}
+
+	/**
+	 * Remove a Halcyon node. Its views are closed by the view manager once the
+	 * repository reports the removal.
 	 * @param node
 	 */
 	public void removeNode( HalcyonNodeInterface node )
 	{
-		mViewManager.close( mNodes.getNode( node.getName() ) );
 		mNodes.remove( node );
 	}
 
+	/**
+	 * Find the nodes matching a query, answered from the node indices.
+	 * @param query the query
+	 * @return the matching nodes
+	 */
+	public List< HalcyonNodeInterface > findNodes( NodeQuery query )
+	{
+		return mNodes.find( query );
+	}
+
+	/**
+	 * Get a live view of the nodes matching a query, updated as nodes come and go.
+	 * @param query the query
+	 * @return the view, to be kept referenced as long as it is used
+	 */
+	public NodeView viewNodes( NodeQuery query )
+	{
+		return mNodes.view( query );
+	}
+
 	/**
 	 * Remove all the nodes are the specific type
 	 * @param type
 	 */
 	public void removeAllNodes( HalcyonNodeType type )
 	{
-		ArrayList< HalcyonNodeInterface > toRemove = new ArrayList();
-		for ( int i = 0; i < mNodes.getNodeCount(); i++ )
-		{
-			if ( mNodes.getNode( i ).getType() == type )
-			{
-				toRemove.add( mNodes.getNode( i ) );
-			}
-		}
-
-		toRemove.stream().forEach( c -> removeNode( c ) );
+		mNodes.removeAll( type );
 	}
 
 	/**
@@ -345,9 +368,9 @@ public class HalcyonFrame extends Application
 				mPrimaryStage.setX( initX );
 				mPrimaryStage.setY( initY );
 
-				for ( int i = 0; i < mNodes.getNodeCount(); i++ )
+				for ( HalcyonNodeInterface node : mNodes.getNodes() )
 				{
-					mViewManager.close( mNodes.getNode( i ) );
+					mViewManager.close( node );
 				}
 			}
 		} );
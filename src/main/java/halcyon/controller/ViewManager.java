@@ -14,7 +14,9 @@ import java.util.LinkedList;
 import java.util.List;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.beans.value.WeakChangeListener;
 import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Node;
@@ -29,9 +31,10 @@ import javafx.stage.WindowEvent;
 
 import javax.swing.SwingUtilities;
 
+import gnu.trove.map.hash.TLongObjectHashMap;
+
 import halcyon.demo.DemoHalcyonNodeType;
 import halcyon.model.collection.HalcyonNodeRepository;
-import halcyon.model.collection.HalcyonNodeRepositoryListener;
 import halcyon.model.collection.ObservableCollection;
 import halcyon.model.collection.ObservableCollectionListener;
 import halcyon.model.node.HalcyonGroupNode;
@@ -53,8 +56,9 @@ public class ViewManager
 {
   private final List<HalcyonPanel> mPages = new LinkedList<>();
 
-  private final HashMap<HalcyonNodeInterface, Stage> mExternalNodeMap =
-                                                                      new HashMap<>();
+  /** the independent windows by node ID */
+  private final TLongObjectHashMap<ExternalWindow> mExternalNodeMap =
+                                                                   new TLongObjectHashMap<>();
 
   private final HashMap<String, ObservableCollection<DockNode>> mControlNodeMap =
                                                                                 new HashMap<>();
@@ -76,8 +80,24 @@ public class ViewManager
   private final HashSet<HalcyonOtherNode> mHalcyonOtherNodes =
                                                              new HashSet<>();
 
-  private final HashMap<String, ContentHolder> mHalcyonLastPosition =
-                                                                    new HashMap<>();
+  /** the last position of the closed independent windows by node ID */
+  private final TLongObjectHashMap<ContentHolder> mHalcyonLastPosition =
+                                                                        new TLongObjectHashMap<>();
+
+  /**
+   * An independent window and the node it shows.
+   */
+  private static class ExternalWindow
+  {
+    final HalcyonNodeInterface mNode;
+    final Stage mStage;
+
+    ExternalWindow(HalcyonNodeInterface pNode, Stage pStage)
+    {
+      mNode = pNode;
+      mStage = pStage;
+    }
+  }
 
   /**
    * Instantiates a new ViewManager.
@@ -118,8 +138,10 @@ public class ViewManager
 
     mAppIconPath = pAppIconPath;
 
-    mControlNodeMap.put("Console", new ObservableCollection<>());
-    mControlNodeMap.put("Toolbar", new ObservableCollection<>());
+    mControlNodeMap.put("Console",
+                        new ObservableCollection<>(DockNode::getTitle));
+    mControlNodeMap.put("Toolbar",
+                        new ObservableCollection<>(DockNode::getTitle));
 
     dockNodes("Console", DockPos.RIGHT, pConsoles, false);
     dockNodes("Toolbar", DockPos.TOP, pToolbars, true);
@@ -159,18 +181,12 @@ public class ViewManager
       }
     });
 
-    nodes.addListener(new HalcyonNodeRepositoryListener()
-    {
-      @Override
-      public void nodeAdded(HalcyonNodeInterface node)
-      {
-        // open(node);
-      }
-
-      @Override
-      public void nodeRemoved(HalcyonNodeInterface node)
+    // closes the views of the removed nodes, then releases their resources
+    nodes.addListener(change -> {
+      for (HalcyonNodeInterface node : change.getRemoved())
       {
         close(node);
+        node.dispose();
       }
     });
   }
@@ -193,7 +209,7 @@ public class ViewManager
                          DockPos pPosition,
                          ObservableCollection<DockNode> pControlNodes, boolean visible)
   {
-    for (DockNode lDockNode : pControlNodes.getList())
+    for (DockNode lDockNode : pControlNodes)
     {
       	dockNode(pMenu, lDockNode, pPosition);
       	if(!visible) lDockNode.close();
@@ -216,20 +232,26 @@ public class ViewManager
                                        new CheckMenuItem(pControlNode.getTitle());
 
                lMenuItem.setSelected(!pControlNode.isClosed());
+               ChangeListener<Boolean> lClosedListener =
+                                                       new ChangeListener<Boolean>()
+                                                       {
+                                                         @Override
+                                                         public void changed(ObservableValue<? extends Boolean> observable,
+                                                                             Boolean oldValue,
+                                                                             Boolean newValue)
+                                                         {
+                                                           if (newValue)
+                                                             mControlNodeMap.get(pMenuGroupName)
+                                                                            .remove(pControlNode);
+                                                           lMenuItem.setSelected(!newValue);
+                                                         }
+                                                       };
+               // the dock node only holds the listener weakly, the menu item
+               // keeps it alive for as long as the item exists
+               lMenuItem.getProperties().put(ChangeListener.class,
+                                             lClosedListener);
                pControlNode.closedProperty()
-                           .addListener(new ChangeListener<Boolean>()
-                           {
-                             @Override
-                             public void changed(ObservableValue<? extends Boolean> observable,
-                                                 Boolean oldValue,
-                                                 Boolean newValue)
-                             {
-                               if (newValue)
-                                 mControlNodeMap.get(pMenuGroupName)
-                                                .remove(pControlNode);
-                               lMenuItem.setSelected(!newValue);
-                             }
-                           });
+                           .addListener(new WeakChangeListener<>(lClosedListener));
 
                lMenuItem.setOnAction(new EventHandler<ActionEvent>()
                {
@@ -283,9 +305,10 @@ public class ViewManager
    */
   public void open(HalcyonNodeInterface node)
   {
-    if (mExternalNodeMap.containsKey(node))
+    final Stage lExternalStage = getExternalStage(node);
+    if (lExternalStage != null)
     {
-      mExternalNodeMap.get(node).requestFocus();
+      lExternalStage.requestFocus();
       return;
     }
 
@@ -414,10 +437,9 @@ public class ViewManager
       mHalcyonOtherNodes.remove(lHalcyonExternalNode);
       return;
     }
-    else if (mExternalNodeMap.containsKey(node))
+    else if (mExternalNodeMap.containsKey(node.getId()))
     {
-      mExternalNodeMap.get(node).close();
-      mExternalNodeMap.remove(node);
+      mExternalNodeMap.remove(node.getId()).mStage.close();
       return;
     }
 
@@ -468,7 +490,7 @@ public class ViewManager
       }
     }
 
-    if (!mExternalNodeMap.containsKey(node))
+    if (!mExternalNodeMap.containsKey(node.getId()))
     {
       final Scene scene = mDockPane.getScene();
 
@@ -486,10 +508,9 @@ public class ViewManager
       lStage.setScene(lScene);
 
       // Check if the node has the last position/size
-      if (mHalcyonLastPosition.containsKey(node.getName()))
+      if (mHalcyonLastPosition.containsKey(node.getId()))
       {
-        ContentHolder lHolder =
-                              mHalcyonLastPosition.get(node.getName());
+        ContentHolder lHolder = mHalcyonLastPosition.get(node.getId());
         Double[] size =
                       (Double[]) lHolder.getProperties().get("Size");
         Double[] position = (Double[]) lHolder.getProperties()
@@ -508,28 +529,35 @@ public class ViewManager
       }
       lStage.show();
 
-      mExternalNodeMap.put(node, lStage);
+      mExternalNodeMap.put(node.getId(), new ExternalWindow(node, lStage));
 
       if (node instanceof HalcyonGroupNode)
       {
-        ((HalcyonGroupNode) node).getNodeList()
-                                 .addListener(new ListChangeListener<Node>()
-                                 {
-                                   @Override
-                                   public void onChanged(Change<? extends Node> c)
-                                   {
-                                     if (c.getList().size() == 0)
-                                     {
-                                       lStage.close();
-                                       mExternalNodeMap.remove(node);
-                                       mHalcyonGroupNodes.removeIf(t -> t.equals(node));
-                                     }
-                                     else
-                                     {
-                                       lStage.sizeToScene();
-                                     }
-                                   }
-                                 });
+        final ObservableList<Node> lNodeList =
+                                             ((HalcyonGroupNode) node).getNodeList();
+        final ListChangeListener<Node> lNodeListListener =
+                                                         new ListChangeListener<Node>()
+                                                         {
+                                                           @Override
+                                                           public void onChanged(Change<? extends Node> c)
+                                                           {
+                                                             if (c.getList()
+                                                                  .size() == 0)
+                                                             {
+                                                               lStage.close();
+                                                               mExternalNodeMap.remove(node.getId());
+                                                               mHalcyonGroupNodes.removeIf(t -> t.equals(node));
+                                                             }
+                                                             else
+                                                             {
+                                                               lStage.sizeToScene();
+                                                             }
+                                                           }
+                                                         };
+        lNodeList.addListener(lNodeListListener);
+        // the listener lives as long as this window, not as the group node
+        lStage.addEventHandler(WindowEvent.WINDOW_HIDDEN,
+                               event -> lNodeList.removeListener(lNodeListListener));
 
         lStage.setTitle(((HalcyonGroupNode) node).getTitle());
       }
@@ -550,15 +578,28 @@ public class ViewManager
             lHolder.addProperty("Position", new Double[]
             { lStage.getX(), lStage.getY() });
 
-            mHalcyonLastPosition.put(node.getName(), lHolder);
+            mHalcyonLastPosition.put(node.getId(), lHolder);
           }
-          mExternalNodeMap.remove(node);
+          mExternalNodeMap.remove(node.getId());
           mHalcyonGroupNodes.removeIf(c -> c.equals(node));
         }
       });
     }
   }
 
+  /**
+   * Gets the independent window of a node.
+   * 
+   * @param node
+   *          the node
+   * @return the window or <code>null</code>
+   */
+  private Stage getExternalStage(HalcyonNodeInterface node)
+  {
+    final ExternalWindow lWindow = mExternalNodeMap.get(node.getId());
+    return lWindow == null ? null : lWindow.mStage;
+  }
+
   private Object loadCollection(String fileName)
   {
     XMLDecoder e = null;
@@ -620,20 +661,21 @@ public class ViewManager
       map.put(n.getName(), otherNode);
     }
 
-    for (HalcyonNodeInterface n : mExternalNodeMap.keySet())
+    for (ExternalWindow window : mExternalNodeMap.valueCollection())
     {
+      final HalcyonNodeInterface n = window.mNode;
+      final Stage lStage = window.mStage;
       ContentHolder halcyonNode =
                                 new ContentHolder(n.getName(),
                                                   ContentHolder.Type.FloatingNode);
 
-      if (mExternalNodeMap.get(n).isIconified())
+      if (lStage.isIconified())
       {
-        mExternalNodeMap.get(n).hide();
-        mExternalNodeMap.get(n).setIconified(false);
+        lStage.hide();
+        lStage.setIconified(false);
       }
 
-      halcyonNode.addProperty("Stage",
-                              mExternalNodeMap.get(n).getTitle());
+      halcyonNode.addProperty("Stage", lStage.getTitle());
 
       if (n instanceof HalcyonGroupNode)
       {
@@ -645,11 +687,9 @@ public class ViewManager
 
       halcyonNode.addProperty("Title", n.getName());
       halcyonNode.addProperty("Size", new Double[]
-      { mExternalNodeMap.get(n).getWidth(),
-        mExternalNodeMap.get(n).getHeight() });
+      { lStage.getWidth(), lStage.getHeight() });
       halcyonNode.addProperty("Position", new Double[]
-      { mExternalNodeMap.get(n).getX(),
-        mExternalNodeMap.get(n).getY() });
+      { lStage.getX(), lStage.getY() });
 
       map.put(n.getName(), halcyonNode);
     }
@@ -725,17 +765,16 @@ public class ViewManager
 
       makeIndependentWindow(n);
 
-      mExternalNodeMap.get(n).setWidth(size[0]);
-      mExternalNodeMap.get(n).setHeight(size[1]);
+      final Stage lStage = getExternalStage(n);
+      lStage.setWidth(size[0]);
+      lStage.setHeight(size[1]);
 
-      mExternalNodeMap.get(n).setX(position[0]);
-      mExternalNodeMap.get(n).setY(position[1]);
+      lStage.setX(position[0]);
+      lStage.setY(position[1]);
       //
       // System.out.println("HalcyonExternalNode : " + n.getName());
-      // System.out.println(mExternalNodeMap.get(n).getWidth() + ", "
-      // + mExternalNodeMap.get(n).getHeight());
-      // System.out.println(mExternalNodeMap.get(n).getX() + ", "
-      // + mExternalNodeMap.get(n).getY());
+      // System.out.println(lStage.getWidth() + ", " + lStage.getHeight());
+      // System.out.println(lStage.getX() + ", " + lStage.getY());
     }
     else
     {
@@ -46,21 +46,21 @@ public class DemoHalcyonMain extends Application
 
     lHalcyonFrame.setTreePanel(lTreePanel);
 
-    final HalcyonNode lLaser1 = HalcyonNode.wrap("Laser-1",
-                                                 DemoHalcyonNodeType.ONE,
-                                                 new VBox());
+    final HalcyonNode lLaser1 = HalcyonNode.wrapLazy("Laser-1",
+                                                     DemoHalcyonNodeType.ONE,
+                                                     VBox::new);
 
-    final HalcyonNode lLaser2 = HalcyonNode.wrap("Laser-2",
-                                                 DemoHalcyonNodeType.ONE,
-                                                 new VBox());
+    final HalcyonNode lLaser2 = HalcyonNode.wrapLazy("Laser-2",
+                                                     DemoHalcyonNodeType.ONE,
+                                                     VBox::new);
 
-    final HalcyonNode lCamera = HalcyonNode.wrap("Camera-1",
-                                                 DemoHalcyonNodeType.TWO,
-                                                 new VBox());
+    final HalcyonNode lCamera = HalcyonNode.wrapLazy("Camera-1",
+                                                     DemoHalcyonNodeType.TWO,
+                                                     VBox::new);
 
-    final HalcyonNode lStage1 = HalcyonNode.wrap("Stage-1",
-                                                 DemoHalcyonNodeType.THREE,
-                                                 new VBox());
+    final HalcyonNode lStage1 = HalcyonNode.wrapLazy("Stage-1",
+                                                     DemoHalcyonNodeType.THREE,
+                                                     VBox::new);
 
     lHalcyonFrame.addNode(lLaser1);
     lHalcyonFrame.addNode(lLaser2);
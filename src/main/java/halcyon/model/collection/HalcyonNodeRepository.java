@@ -1,28 +1,222 @@
 package halcyon.model.collection;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import javafx.application.Platform;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
 
 import halcyon.model.node.HalcyonNodeInterface;
+import halcyon.model.node.HalcyonNodeType;
 
 /**
- * A modifiable set of {@link halcyon.model.node.HalcyonNode}s.
+ * A modifiable set of {@link halcyon.model.node.HalcyonNode}s with unique
+ * names. Nodes are registered by {@link HalcyonNodeInterface#getId() ID}.
+ * Besides the insertion-ordered list, the repository maintains a secondary
+ * index by name and an insertion-ordered index by type, so that ID and name
+ * lookups take constant time and type queries are proportional to the number
+ * of nodes of that type.
+ * <p>
+ * The repository can be modified from any thread. Modifications update the
+ * indices in place under a short internal lock and never wait for the
+ * listeners, so adding a node takes constant time. Reads take no lock and
+ * iterate over a snapshot; the first read after a modification takes the lock
+ * to copy the modified indices, once however many modifications preceded it.
+ * Listeners are notified on the event executor, the
+ * JavaFX application thread by default, in the order of the modifications.
+ * Modifications made on the JavaFX application thread while no event is
+ * pending are delivered immediately.
+ * <p>
+ * Names must not change while a node is registered: the name and path indices
+ * keep the name a node was added with. To rename a node, remove it and add it
+ * again.
+ * <p>
+ * Node names are also read as paths such as "rig/arm/camera" and indexed in
+ * a {@link NodePathIndex}, which answers subtree and prefix queries in time
+ * proportional to the path length and the number of results.
+ * <p>
+ * The {@link HalcyonNodeInterface#getTags() tags} of the nodes are indexed by
+ * key and value. A {@link NodeQuery} combining tag values and a type starts
+ * from the smallest of the matching index entries instead of scanning the
+ * repository, and a {@link NodeView} keeps the result of a query up to date
+ * from the change batches. Tags are read when a node is added; after changing
+ * the tags of a registered node, call {@link #retag(HalcyonNodeInterface)}.
+ * <p>
+ * Listeners receive {@link HalcyonNodeRepositoryChange batches}: bulk
+ * modifications and {@link #beginTransaction() transactions} produce one
+ * batch, and batches still pending when the listeners are notified are merged
+ * into one.
  */
 public class HalcyonNodeRepository
 {
+  private static final Logger LOGGER =
+                                     Logger.getLogger(HalcyonNodeRepository.class.getName());
+
   /**
    * observers of this repository, will be informed whenever nodes are added or
    * removed
    */
-  private List<HalcyonNodeRepositoryListener> listeners =
-                                                        new ArrayList<>();
+  private final ListenerList<HalcyonNodeRepositoryBatchListener> listeners =
+                                                                           new ListenerList<>();
+
+  /** the nodes in this repository, in insertion order; guarded by the lock */
+  private final List<HalcyonNodeInterface> nodes = new ArrayList<>();
+
+  /** the registered nodes by ID; guarded by the lock */
+  private final TLongObjectHashMap<Registration> nodesById =
+                                                           new TLongObjectHashMap<>();
+
+  /** secondary index of the nodes by name */
+  private final Map<String, HalcyonNodeInterface> nodesByName =
+                                                              new ConcurrentHashMap<>();
+
+  /** the nodes by type, in insertion order; guarded by the lock */
+  private final Map<HalcyonNodeType, List<HalcyonNodeInterface>> nodesByType =
+                                                                           new HashMap<>();
+
+  /**
+   * copy of the nodes, by ID and by type, read without locking; null once
+   * modified, until the next read takes a new one
+   */
+  private volatile Snapshot snapshot = null;
+
+  /** the nodes by path, names being read as "/"-separated paths */
+  private final NodePathIndex paths = new NodePathIndex();
 
-  /** the nodes in this repository */
-  private List<HalcyonNodeInterface> nodes = new ArrayList<>();
+  /** the nodes by tag key and tag value */
+  private final Map<String, Map<String, Set<HalcyonNodeInterface>>> nodesByTag =
+                                                                              new ConcurrentHashMap<>();
+
+  /** guards modifications, transactions and the order of their events */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** nesting depth of the modifications of the lock holder */
+  private int depth = 0;
+
+  /** modifications of the current outermost modification or transaction */
+  private HalcyonNodeRepositoryChange.Builder pending =
+                                                      new HalcyonNodeRepositoryChange.Builder();
+
+  /** changes not delivered yet, in modification order */
+  private final Queue<HalcyonNodeRepositoryChange> events =
+                                                          new ConcurrentLinkedQueue<>();
+
+  /** true while a delivery task is scheduled or running */
+  private final AtomicBoolean delivering = new AtomicBoolean();
+
+  private final Runnable deliverTask = this::deliver;
+
+  /** null for the JavaFX application thread */
+  private final Executor executor;
+
+  /**
+   * Scope grouping modifications into one batch of events. Other threads
+   * modifying the repository wait until the transaction is closed.
+   */
+  public class Transaction implements AutoCloseable
+  {
+    private boolean closed = false;
+
+    private Transaction()
+    {
+      begin();
+    }
+
+    /**
+     * Ends the transaction; the listeners are notified of its modifications
+     * once the outermost transaction is closed. Must be called on the thread
+     * which began the transaction.
+     */
+    @Override
+    public void close()
+    {
+      if (closed)
+        return;
+      closed = true;
+      end();
+    }
+  }
+
+  /**
+   * A registered node and the name and tags it was indexed with.
+   */
+  private static class Registration
+  {
+    final HalcyonNodeInterface node;
+    final String name;
+    volatile Map<String, String> tags = Collections.emptyMap();
+
+    Registration(HalcyonNodeInterface node)
+    {
+      this.node = node;
+      this.name = node.getName();
+    }
+  }
+
+  /**
+   * Read-only copy of the nodes and of their ID and type indices.
+   */
+  private static class Snapshot
+  {
+    final List<HalcyonNodeInterface> nodes;
+    final TLongObjectHashMap<Registration> byId;
+    final Map<HalcyonNodeType, List<HalcyonNodeInterface>> byType =
+                                                                  new HashMap<>();
+
+    Snapshot(List<HalcyonNodeInterface> nodes,
+             TLongObjectHashMap<Registration> byId,
+             Map<HalcyonNodeType, List<HalcyonNodeInterface>> byType)
+    {
+      this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+      this.byId = new TLongObjectHashMap<>(byId);
+      for (Map.Entry<HalcyonNodeType, List<HalcyonNodeInterface>> entry : byType.entrySet())
+        this.byType.put(entry.getKey(),
+                        Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+    }
+  }
+
+  /**
+   * Instantiates a repository notifying its listeners on the JavaFX
+   * application thread.
+   */
+  public HalcyonNodeRepository()
+  {
+    this(null);
+  }
+
+  /**
+   * Instantiates a repository notifying its listeners on the given executor.
+   * The executor may be multi-threaded; events are still delivered one at a
+   * time and in order.
+   * 
+   * @param eventExecutor
+   *          the executor, or <code>null</code> for the JavaFX application
+   *          thread
+   */
+  public HalcyonNodeRepository(Executor eventExecutor)
+  {
+    executor = eventExecutor;
+  }
 
   /**
    * Adds an observer to this repository. The observer will be informed whenever
-   * a nodes is added or removed from this repository.
+   * a node is added or removed from this repository, with one callback per
+   * node.
    * 
    * @param listener
    *          the new observer
@@ -32,6 +226,47 @@ public class HalcyonNodeRepository
     listeners.add(listener);
   }
 
+  /**
+   * Adds an observer to this repository. The observer will be informed whenever
+   * nodes are added or removed from this repository, with one callback per
+   * batch.
+   * 
+   * @param listener
+   *          the new observer
+   */
+  public void addListener(HalcyonNodeRepositoryBatchListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /**
+   * Adds an observer to this repository, like
+   * {@link #addListener(HalcyonNodeRepositoryBatchListener)}, and returns a
+   * handle removing it.
+   * 
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  public Subscription subscribe(HalcyonNodeRepositoryBatchListener listener)
+  {
+    return listeners.add(listener);
+  }
+
+  /**
+   * Adds an observer that does not prevent its garbage collection: it is
+   * removed once no longer referenced elsewhere, e.g. when the view owning it
+   * is discarded.
+   * 
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  public Subscription addWeakListener(HalcyonNodeRepositoryBatchListener listener)
+  {
+    return listeners.addWeak(listener);
+  }
+
   /**
    * Removes an observer from this repository.
    * 
@@ -44,22 +279,85 @@ public class HalcyonNodeRepository
   }
 
   /**
-   * Adds a node to the list of Halcyon nodes.
+   * Removes a batch observer from this repository.
+   * 
+   * @param listener
+   *          the observer to remove
+   */
+  public void removeListener(HalcyonNodeRepositoryBatchListener listener)
+  {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Begins a transaction: the modifications made until it is closed are
+   * delivered to the listeners as one batch. Transactions can be nested.
+   * 
+   * <pre>
+   * try (HalcyonNodeRepository.Transaction t = repository.beginTransaction())
+   * {
+   *   ...
+   * }
+   * </pre>
+   * 
+   * @return the transaction, to be closed by the calling thread
+   */
+  public Transaction beginTransaction()
+  {
+    return new Transaction();
+  }
+
+  /**
+   * Adds a node to the list of Halcyon nodes. A node already registered, or
+   * whose name is taken, is ignored and reported as a warning on the
+   * repository logger.
    * 
    * @param node
    *          the new node
    */
   public void add(HalcyonNodeInterface node)
   {
-    if (nodes.contains(node))
+    begin();
+    try
     {
-      System.err.println(node.getName()
-                         + " is not unique in the collection. Please, use different name");
-      return;
+      if (!index(node))
+        return;
+      nodes.add(node);
+      nodesByType.computeIfAbsent(node.getType(), t -> new ArrayList<>())
+                 .add(node);
+      snapshot = null;
+    }
+    finally
+    {
+      end();
+    }
+  }
+
+  /**
+   * Adds nodes to the list of Halcyon nodes, notifying the listeners with one
+   * batch.
+   * 
+   * @param newNodes
+   *          the new nodes
+   */
+  public void addAll(Collection<? extends HalcyonNodeInterface> newNodes)
+  {
+    begin();
+    try
+    {
+      for (HalcyonNodeInterface node : newNodes)
+        if (index(node))
+        {
+          nodes.add(node);
+          nodesByType.computeIfAbsent(node.getType(), t -> new ArrayList<>())
+                     .add(node);
+          snapshot = null;
+        }
+    }
+    finally
+    {
+      end();
     }
-    nodes.add(node);
-    for (HalcyonNodeRepositoryListener listener : listeners.toArray(new HalcyonNodeRepositoryListener[listeners.size()]))
-      listener.nodeAdded(node);
   }
 
   /**
@@ -70,10 +368,102 @@ public class HalcyonNodeRepository
    */
   public void remove(HalcyonNodeInterface node)
   {
-    if (nodes.remove(node))
+    removeAll(Collections.singletonList(node));
+  }
+
+  /**
+   * Removes nodes from the list of Halcyon nodes in a single pass over the
+   * repository, notifying the listeners with one batch.
+   * 
+   * @param oldNodes
+   *          the nodes to remove
+   * @return the removed nodes
+   */
+  public List<HalcyonNodeInterface> removeAll(Collection<? extends HalcyonNodeInterface> oldNodes)
+  {
+    begin();
+    try
     {
-      for (HalcyonNodeRepositoryListener listener : listeners.toArray(new HalcyonNodeRepositoryListener[listeners.size()]))
-        listener.nodeRemoved(node);
+      List<HalcyonNodeInterface> removed = new ArrayList<>(oldNodes.size());
+      Set<HalcyonNodeType> types = new HashSet<>();
+      for (HalcyonNodeInterface node : oldNodes)
+      {
+        Registration registration = nodesById.get(node.getId());
+        if (registration == null || registration.node != node)
+          continue;
+        nodesById.remove(node.getId());
+        nodesByName.remove(registration.name, node);
+        paths.remove(registration.name, node);
+        unindexTags(registration);
+        removed.add(node);
+        types.add(node.getType());
+        pending.removed(node);
+      }
+      if (removed.isEmpty())
+        return removed;
+
+      // the remaining nodes are exactly the ones still registered
+      nodes.removeIf(node -> !nodesById.containsKey(node.getId()));
+      for (HalcyonNodeType type : types)
+      {
+        List<HalcyonNodeInterface> ofType = nodesByType.get(type);
+        if (ofType == null)
+          continue;
+        ofType.removeIf(node -> !nodesById.containsKey(node.getId()));
+        if (ofType.isEmpty())
+          nodesByType.remove(type);
+      }
+      snapshot = null;
+      return removed;
+    }
+    finally
+    {
+      end();
+    }
+  }
+
+  /**
+   * Removes all the nodes of a type, in a single pass over the repository.
+   * 
+   * @param type
+   *          the type of the nodes to remove
+   * @return the removed nodes, in insertion order
+   */
+  public List<HalcyonNodeInterface> removeAll(HalcyonNodeType type)
+  {
+    begin();
+    try
+    {
+      List<HalcyonNodeInterface> ofType = nodesByType.get(type);
+      if (ofType == null)
+        return Collections.emptyList();
+      // removeAll modifies the list of the type
+      return removeAll(new ArrayList<>(ofType));
+    }
+    finally
+    {
+      end();
+    }
+  }
+
+  /**
+   * Removes the node with the given path and all the nodes below it,
+   * notifying the listeners with one batch.
+   * 
+   * @param path
+   *          the path of the subtree
+   * @return the removed nodes, depth first
+   */
+  public List<HalcyonNodeInterface> removeSubtree(String path)
+  {
+    begin();
+    try
+    {
+      return removeAll(paths.getSubtree(path));
+    }
+    finally
+    {
+      end();
     }
   }
 
@@ -84,7 +474,7 @@ public class HalcyonNodeRepository
    */
   public int getNodeCount()
   {
-    return nodes.size();
+    return snapshot().nodes.size();
   }
 
   /**
@@ -96,11 +486,11 @@ public class HalcyonNodeRepository
    */
   public HalcyonNodeInterface getNode(int index)
   {
-    return nodes.get(index);
+    return snapshot().nodes.get(index);
   }
 
   /**
-   * Gets the first node with the
+   * Gets the node with the
    * {@link halcyon.model.node.HalcyonNode#getName() name} <code>name</code>.
    * 
    * @param name
@@ -109,10 +499,415 @@ public class HalcyonNodeRepository
    */
   public HalcyonNodeInterface getNode(String name)
   {
-    for (HalcyonNodeInterface node : nodes)
-      if (node.getName().equals(name))
-        return node;
+    return nodesByName.get(name);
+  }
+
+  /**
+   * Gets the node with the given {@link HalcyonNodeInterface#getId() ID}.
+   * 
+   * @param id
+   *          the ID of the node
+   * @return a node or <code>null</code>
+   */
+  public HalcyonNodeInterface getNodeById(long id)
+  {
+    Registration registration = snapshot().byId.get(id);
+    return registration == null ? null : registration.node;
+  }
+
+  /**
+   * Tells whether a node is in this repository.
+   * 
+   * @param node
+   *          the node
+   * @return true if the node is registered
+   */
+  public boolean contains(HalcyonNodeInterface node)
+  {
+    return getNodeById(node.getId()) == node;
+  }
+
+  /**
+   * Tells whether a node has the given name.
+   * 
+   * @param name
+   *          the name
+   * @return true if the name is taken
+   */
+  public boolean contains(String name)
+  {
+    return nodesByName.containsKey(name);
+  }
+
+  /**
+   * Gets all the nodes, in insertion order. The returned list is a snapshot:
+   * it does not change when the repository does.
+   * 
+   * @return an unmodifiable list of the nodes
+   */
+  public List<HalcyonNodeInterface> getNodes()
+  {
+    return snapshot().nodes;
+  }
+
+  /**
+   * Gets the nodes of a type, in insertion order. The returned collection is a
+   * snapshot: it does not change when the repository does.
+   * 
+   * @param type
+   *          the type
+   * @return an unmodifiable collection of the nodes of that type
+   */
+  public Collection<HalcyonNodeInterface> getNodes(HalcyonNodeType type)
+  {
+    List<HalcyonNodeInterface> ofType = snapshot().byType.get(type);
+    if (ofType == null)
+      return Collections.emptyList();
+    return ofType;
+  }
+
+  /**
+   * Gets the index of the node names read as paths.
+   * 
+   * @return the path index
+   */
+  public NodePathIndex getPathIndex()
+  {
+    return paths;
+  }
+
+  /**
+   * Gets the node with the given path and all the nodes below it.
+   * 
+   * @param path
+   *          the path of the subtree
+   * @return the nodes of the subtree, depth first
+   */
+  public List<HalcyonNodeInterface> getSubtree(String path)
+  {
+    return paths.getSubtree(path);
+  }
+
+  /**
+   * Gets the nodes whose path starts with a prefix, which may end in the middle
+   * of a segment.
+   * 
+   * @param prefix
+   *          the prefix
+   * @return the matching nodes, depth first
+   */
+  public List<HalcyonNodeInterface> getNodesWithPrefix(String prefix)
+  {
+    return paths.getByPrefix(prefix);
+  }
+
+  /**
+   * Re-reads the tags of a registered node after they were changed. The
+   * listeners see the node removed and added again in one batch, so that live
+   * views re-evaluate it.
+   * 
+   * @param node
+   *          the node whose tags changed
+   */
+  public void retag(HalcyonNodeInterface node)
+  {
+    begin();
+    try
+    {
+      Registration registration = nodesById.get(node.getId());
+      if (registration == null || registration.node != node)
+        return;
+      unindexTags(registration);
+      indexTags(registration);
+      pending.removed(node);
+      pending.added(node);
+    }
+    finally
+    {
+      end();
+    }
+  }
+
+  /**
+   * Streams the nodes matching a query, in no particular order. The tag and
+   * type conditions are answered from the indices: only the nodes of the
+   * smallest matching index entry are visited.
+   * 
+   * @param query
+   *          the query
+   * @return the matching nodes
+   */
+  public Stream<HalcyonNodeInterface> query(NodeQuery query)
+  {
+    return candidates(query).stream().filter(node -> matches(query, node));
+  }
+
+  /**
+   * Gets the nodes matching a query, in no particular order.
+   * 
+   * @param query
+   *          the query
+   * @return the matching nodes
+   */
+  public List<HalcyonNodeInterface> find(NodeQuery query)
+  {
+    List<HalcyonNodeInterface> found = new ArrayList<>();
+    for (HalcyonNodeInterface node : candidates(query))
+      if (matches(query, node))
+        found.add(node);
+    return found;
+  }
+
+  /**
+   * Gets a live view of the nodes matching a query, updated as nodes are added
+   * and removed. The view stops being updated once closed or no longer
+   * referenced.
+   * 
+   * @param query
+   *          the query
+   * @return the view
+   */
+  public NodeView view(NodeQuery query)
+  {
+    begin();
+    try
+    {
+      return new NodeView(this, query, find(query));
+    }
+    finally
+    {
+      end();
+    }
+  }
+
+  /**
+   * Gets the values of a tag among the nodes, e.g. the channels in use.
+   * 
+   * @param key
+   *          the tag key
+   * @return the values
+   */
+  public Set<String> getTagValues(String key)
+  {
+    Map<String, Set<HalcyonNodeInterface>> byValue = nodesByTag.get(key);
+    if (byValue == null)
+      return Collections.emptySet();
+    return Collections.unmodifiableSet(new HashSet<>(byValue.keySet()));
+  }
+
+  /**
+   * Gets the smallest indexed collection containing all the matches of a
+   * query.
+   */
+  private Collection<HalcyonNodeInterface> candidates(NodeQuery query)
+  {
+    Collection<HalcyonNodeInterface> smallest =
+                                              query.getType() == null ? getNodes()
+                                                                      : getNodes(query.getType());
+    for (Map.Entry<String, String> tag : query.getTags().entrySet())
+    {
+      Map<String, Set<HalcyonNodeInterface>> byValue =
+                                                     nodesByTag.get(tag.getKey());
+      Set<HalcyonNodeInterface> withValue =
+                                          byValue == null ? null
+                                                          : byValue.get(tag.getValue());
+      if (withValue == null)
+        return Collections.emptyList();
+      if (withValue.size() < smallest.size())
+        smallest = withValue;
+    }
+    return smallest;
+  }
+
+  /**
+   * Registers a new node, indexes it and records its addition; must hold the
+   * lock. A node that is already registered, or whose
+   * name is taken, is rejected with a warning on the repository logger.
+   * 
+   * @return true if the node was registered
+   */
+  private boolean index(HalcyonNodeInterface node)
+  {
+    if (nodesById.containsKey(node.getId()))
+    {
+      LOGGER.log(Level.WARNING,
+                 "Node {0} (ID {1}) is already in the repository, ignored",
+                 new Object[]
+                 { node.getName(), Long.toString(node.getId()) });
+      return false;
+    }
+    Registration registration = new Registration(node);
+    if (nodesByName.putIfAbsent(registration.name, node) != null)
+    {
+      LOGGER.log(Level.WARNING,
+                 "Node name {0} is already taken in the repository, node ignored; use a different name",
+                 registration.name);
+      return false;
+    }
+    nodesById.put(node.getId(), registration);
+    paths.put(registration.name, node);
+    indexTags(registration);
+    pending.added(node);
+    return true;
+  }
+
+  /**
+   * Indexes the current tags of a node; must hold the lock.
+   */
+  private void indexTags(Registration registration)
+  {
+    final HalcyonNodeInterface node = registration.node;
+    Map<String, String> tags = node.getTags();
+    if (tags.isEmpty())
+      return;
+
+    tags = Collections.unmodifiableMap(new HashMap<>(tags));
+    registration.tags = tags;
+    for (Map.Entry<String, String> tag : tags.entrySet())
+      nodesByTag.computeIfAbsent(tag.getKey(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(tag.getValue(),
+                                 v -> ConcurrentHashMap.newKeySet())
+                .add(node);
+  }
+
+  /**
+   * Removes the indexed tags of a node; must hold the lock.
+   */
+  private void unindexTags(Registration registration)
+  {
+    final HalcyonNodeInterface node = registration.node;
+    final Map<String, String> tags = registration.tags;
+    registration.tags = Collections.emptyMap();
+
+    for (Map.Entry<String, String> tag : tags.entrySet())
+    {
+      Map<String, Set<HalcyonNodeInterface>> byValue =
+                                                     nodesByTag.get(tag.getKey());
+      Set<HalcyonNodeInterface> withValue = byValue.get(tag.getValue());
+      withValue.remove(node);
+      if (withValue.isEmpty())
+      {
+        byValue.remove(tag.getValue());
+        if (byValue.isEmpty())
+          nodesByTag.remove(tag.getKey());
+      }
+    }
+  }
+
+  /**
+   * Tests a node against a query using the tags it was indexed with.
+   */
+  boolean matches(NodeQuery query, HalcyonNodeInterface node)
+  {
+    Registration registration = snapshot().byId.get(node.getId());
+    return registration != null && registration.node == node
+           && query.test(node, registration.tags);
+  }
+
+  /**
+   * Gets the current snapshot of the nodes, taking a new one under the lock if
+   * the repository was modified since the last one.
+   */
+  private Snapshot snapshot()
+  {
+    Snapshot current = snapshot;
+    if (current != null)
+      return current;
+
+    lock.lock();
+    try
+    {
+      if (snapshot == null)
+        snapshot = new Snapshot(nodes, nodesById, nodesByType);
+      return snapshot;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void begin()
+  {
+    lock.lock();
+    depth++;
+  }
+
+  private void end()
+  {
+    boolean publish = false;
+    try
+    {
+      if (--depth == 0 && !pending.isEmpty())
+      {
+        events.add(pending.build());
+        pending = new HalcyonNodeRepositoryChange.Builder();
+        publish = true;
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+    if (publish)
+      scheduleDelivery();
+  }
+
+  private void scheduleDelivery()
+  {
+    if (!delivering.compareAndSet(false, true))
+      return;
+
+    if (executor != null)
+      executor.execute(deliverTask);
+    else if (Platform.isFxApplicationThread())
+      deliver();
+    else
+      Platform.runLater(deliverTask);
+  }
+
+  private void deliver()
+  {
+    do
+    {
+      HalcyonNodeRepositoryChange change;
+      while ((change = nextChange()) != null)
+        listeners.forEach(HalcyonNodeRepository::notify, change);
+      delivering.set(false);
+    }
+    // an event queued after the last poll may have found the flag still set
+    while (!events.isEmpty() && delivering.compareAndSet(false, true));
+  }
+
+  private static void notify(HalcyonNodeRepositoryBatchListener listener,
+                             HalcyonNodeRepositoryChange change)
+  {
+    try
+    {
+      listener.nodesChanged(change);
+    }
+    catch (RuntimeException e)
+    {
+      // a failing listener must not hold back the following events
+      LOGGER.log(Level.SEVERE, "Repository listener failed", e);
+    }
+  }
+
+  /**
+   * Takes the pending changes, merged into one.
+   */
+  private HalcyonNodeRepositoryChange nextChange()
+  {
+    HalcyonNodeRepositoryChange first = events.poll();
+    if (first == null || events.isEmpty())
+      return first;
 
-    return null;
+    HalcyonNodeRepositoryChange.Builder merged =
+                                               new HalcyonNodeRepositoryChange.Builder();
+    merged.append(first);
+    HalcyonNodeRepositoryChange next;
+    while ((next = events.poll()) != null)
+      merged.append(next);
+    return merged.build();
   }
 }
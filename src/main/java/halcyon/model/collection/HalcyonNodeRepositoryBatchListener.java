@@ -0,0 +1,17 @@
+package halcyon.model.collection;
+
+/**
+ * Halcyon node repository listener receiving the changes as batches.
+ */
+@FunctionalInterface
+public interface HalcyonNodeRepositoryBatchListener
+{
+  /**
+   * Invoked when Halcyon nodes were added to or removed from the observed
+   * repository.
+   * 
+   * @param change
+   *          the removed and added nodes
+   */
+  public void nodesChanged(HalcyonNodeRepositoryChange change);
+}
@@ -0,0 +1,90 @@
+package halcyon.model.collection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import halcyon.model.node.HalcyonNodeInterface;
+
+/**
+ * A batch of changes of a {@link HalcyonNodeRepository}: the removed nodes and
+ * the added nodes, each in modification order. Applying the removals first and
+ * then the additions yields the new content of the repository. A node added
+ * and removed again within the same batch appears in neither list.
+ */
+public class HalcyonNodeRepositoryChange
+{
+  private final List<HalcyonNodeInterface> removed;
+  private final List<HalcyonNodeInterface> added;
+
+  HalcyonNodeRepositoryChange(List<HalcyonNodeInterface> removed,
+                              List<HalcyonNodeInterface> added)
+  {
+    this.removed = Collections.unmodifiableList(removed);
+    this.added = Collections.unmodifiableList(added);
+  }
+
+  /**
+   * Gets the removed nodes.
+   * 
+   * @return the removed nodes
+   */
+  public List<HalcyonNodeInterface> getRemoved()
+  {
+    return removed;
+  }
+
+  /**
+   * Gets the added nodes.
+   * 
+   * @return the added nodes
+   */
+  public List<HalcyonNodeInterface> getAdded()
+  {
+    return added;
+  }
+
+  /**
+   * Accumulates modifications into a change, cancelling out nodes added and
+   * removed again. Nodes are matched by {@link HalcyonNodeInterface#getId()
+   * ID}.
+   */
+  static class Builder
+  {
+    private final List<HalcyonNodeInterface> removed = new ArrayList<>();
+    private final Map<Long, HalcyonNodeInterface> added =
+                                                        new LinkedHashMap<>();
+
+    void removed(HalcyonNodeInterface node)
+    {
+      if (!added.remove(node.getId(), node))
+        removed.add(node);
+    }
+
+    void added(HalcyonNodeInterface node)
+    {
+      added.put(node.getId(), node);
+    }
+
+    void append(HalcyonNodeRepositoryChange change)
+    {
+      for (HalcyonNodeInterface node : change.getRemoved())
+        removed(node);
+      for (HalcyonNodeInterface node : change.getAdded())
+        added(node);
+    }
+
+    boolean isEmpty()
+    {
+      return removed.isEmpty() && added.isEmpty();
+    }
+
+    HalcyonNodeRepositoryChange build()
+    {
+      return new HalcyonNodeRepositoryChange(new ArrayList<>(removed),
+                                             new ArrayList<>(added.values()));
+    }
+  }
+}
@@ -3,9 +3,13 @@ package halcyon.model.collection;
 import halcyon.model.node.HalcyonNodeInterface;
 
 /**
- * Halcyon node repository listener
+ * Halcyon node repository listener receiving one callback per node. Batches
+ * are adapted by calling {@link #nodeRemoved(HalcyonNodeInterface)} for each
+ * removed node and then {@link #nodeAdded(HalcyonNodeInterface)} for each
+ * added node.
  */
-public interface HalcyonNodeRepositoryListener
+public interface HalcyonNodeRepositoryListener extends
+                                               HalcyonNodeRepositoryBatchListener
 {
   /**
    * Invoked when a Halcyon node was added to the observed repository.
@@ -22,4 +26,13 @@ public interface HalcyonNodeRepositoryListener
    *          the removed Halcyon node
    */
   public void nodeRemoved(HalcyonNodeInterface node);
+
+  @Override
+  default public void nodesChanged(HalcyonNodeRepositoryChange change)
+  {
+    for (HalcyonNodeInterface node : change.getRemoved())
+      nodeRemoved(node);
+    for (HalcyonNodeInterface node : change.getAdded())
+      nodeAdded(node);
+  }
 }
@@ -0,0 +1,235 @@
+package halcyon.model.collection;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe list of listeners, registered either strongly or weakly. A weak
+ * registration does not keep its listener alive: once the listener is garbage
+ * collected, its entry is purged on the next registration or notification, so
+ * dispatch cost and retained memory stay proportional to the live listeners.
+ * <p>
+ * Entries are held in an array replaced on every registration change;
+ * notifying takes no lock and does not allocate.
+ * 
+ * @param <L>
+ *          the listener type
+ */
+public class ListenerList<L>
+{
+  private static final Entry<?>[] cEmpty = new Entry<?>[0];
+
+  private volatile Entry<L>[] entries = empty();
+
+  /** receives the weak entries whose listener was garbage collected */
+  private final ReferenceQueue<L> collected = new ReferenceQueue<>();
+
+  /**
+   * Registers a listener strongly: it stays registered until removed or until
+   * the subscription is closed.
+   * 
+   * @param listener
+   *          the listener
+   * @return the subscription
+   */
+  public Subscription add(L listener)
+  {
+    return add(new Entry<>(this, listener, true, null));
+  }
+
+  /**
+   * Registers a listener weakly: it stays registered until removed, until the
+   * subscription is closed or until it is garbage collected. The caller must
+   * keep a reference to the listener for as long as it wants notifications; a
+   * lambda passed directly is collected right away.
+   * 
+   * @param listener
+   *          the listener
+   * @return the subscription
+   */
+  public Subscription addWeak(L listener)
+  {
+    return add(new Entry<>(this, listener, false, collected));
+  }
+
+  /**
+   * Unregisters the first registration of a listener. Its subscription becomes
+   * inactive, and a notification already in progress skips it.
+   * 
+   * @param listener
+   *          the listener
+   */
+  public synchronized void remove(L listener)
+  {
+    for (Entry<L> entry : entries)
+      if (Objects.equals(entry.listener(), listener))
+      {
+        entry.close();
+        return;
+      }
+  }
+
+  /**
+   * Gets the number of live registrations.
+   * 
+   * @return the number of listeners
+   */
+  public int size()
+  {
+    purgeCollected();
+    int count = 0;
+    for (Entry<L> entry : entries)
+      if (entry.listener() != null)
+        count++;
+    return count;
+  }
+
+  /**
+   * Calls an action for every live listener, in registration order.
+   * 
+   * @param action
+   *          the action
+   */
+  public void forEach(Consumer<? super L> action)
+  {
+    purgeCollected();
+    for (Entry<L> entry : entries)
+    {
+      L listener = entry.listener();
+      if (listener != null)
+        action.accept(listener);
+    }
+  }
+
+  /**
+   * Calls an action with an argument for every live listener, in registration
+   * order. Passing a non-capturing lambda or method reference, e.g.
+   * <code>forEach(Listener::itemAdded, item)</code>, notifies without
+   * allocating.
+   * 
+   * @param action
+   *          the action
+   * @param argument
+   *          the second argument of the action
+   * @param <A>
+   *          the argument type
+   */
+  public <A> void forEach(BiConsumer<? super L, ? super A> action,
+                          A argument)
+  {
+    purgeCollected();
+    for (Entry<L> entry : entries)
+    {
+      L listener = entry.listener();
+      if (listener != null)
+        action.accept(listener, argument);
+    }
+  }
+
+  private synchronized Subscription add(Entry<L> entry)
+  {
+    purgeCollected();
+    final Entry<L>[] old = entries;
+    Entry<L>[] updated = newArray(old.length + 1);
+    System.arraycopy(old, 0, updated, 0, old.length);
+    updated[old.length] = entry;
+    entries = updated;
+    return entry;
+  }
+
+  private synchronized void removeEntry(Entry<?> entry)
+  {
+    final Entry<L>[] old = entries;
+    for (int i = 0; i < old.length; i++)
+      if (old[i] == entry)
+      {
+        Entry<L>[] updated = newArray(old.length - 1);
+        System.arraycopy(old, 0, updated, 0, i);
+        System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+        entries = updated;
+        return;
+      }
+  }
+
+  private void purgeCollected()
+  {
+    if (collected.poll() == null)
+      return;
+
+    synchronized (this)
+    {
+      while (collected.poll() != null)
+        ;
+      int live = 0;
+      for (Entry<L> entry : entries)
+        if (entry.listener() != null)
+          live++;
+      if (live == entries.length)
+        return;
+
+      Entry<L>[] updated = newArray(live);
+      int i = 0;
+      for (Entry<L> entry : entries)
+        if (entry.listener() != null)
+          updated[i++] = entry;
+      entries = updated;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <L> Entry<L>[] empty()
+  {
+    return (Entry<L>[]) cEmpty;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <L> Entry<L>[] newArray(int length)
+  {
+    return (Entry<L>[]) new Entry<?>[length];
+  }
+
+  /**
+   * A registration; strong entries additionally hold their listener in a
+   * field.
+   */
+  private static class Entry<L> extends WeakReference<L> implements
+                                                   Subscription
+  {
+    private final ListenerList<L> owner;
+    /** keeps a strongly registered listener reachable */
+    @SuppressWarnings("unused")
+    private final L strong;
+    private volatile boolean closed = false;
+
+    Entry(ListenerList<L> owner,
+          L listener,
+          boolean strongly,
+          ReferenceQueue<L> queue)
+    {
+      super(listener, queue);
+      this.owner = owner;
+      this.strong = strongly ? listener : null;
+    }
+
+    L listener()
+    {
+      return closed ? null : get();
+    }
+
+    @Override
+    public void close()
+    {
+      closed = true;
+      owner.removeEntry(this);
+    }
+
+    @Override
+    public boolean isActive()
+    {
+      return listener() != null;
+    }
+  }
+}
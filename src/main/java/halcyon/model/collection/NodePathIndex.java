@@ -0,0 +1,282 @@
+package halcyon.model.collection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import halcyon.model.node.HalcyonNodeInterface;
+
+/**
+ * Trie of node names read as paths, e.g. "rig/arm/detection/camera". Each
+ * level holds its child segments sorted; a segment may carry a node, have
+ * children, or both. Looking up a path costs its number of segments times the
+ * logarithm of their number of siblings, and enumerating a subtree or the
+ * paths starting with a prefix additionally costs the number of entries
+ * found, independently of the size of the repository.
+ * <p>
+ * The index is maintained by its {@link HalcyonNodeRepository}; queries may
+ * be called from any thread and return snapshots.
+ */
+public class NodePathIndex
+{
+  /** separator between the segments of a path */
+  public static final char cSeparator = '/';
+
+  private final Entry mRoot = new Entry(null, "", "");
+
+  /**
+   * A child of a path: its segment, full path, node if any and whether it has
+   * children itself.
+   */
+  public static class Child
+  {
+    private final String mSegment;
+    private final String mPath;
+    private final HalcyonNodeInterface mNode;
+    private final boolean mHasChildren;
+
+    Child(Entry pEntry)
+    {
+      mSegment = pEntry.mSegment;
+      mPath = pEntry.mPath;
+      mNode = pEntry.mNode;
+      mHasChildren = pEntry.mChildren != null
+                     && !pEntry.mChildren.isEmpty();
+    }
+
+    /**
+     * Gets the last segment of the path.
+     * 
+     * @return the segment
+     */
+    public String getSegment()
+    {
+      return mSegment;
+    }
+
+    /**
+     * Gets the full path.
+     * 
+     * @return the path
+     */
+    public String getPath()
+    {
+      return mPath;
+    }
+
+    /**
+     * Gets the node named by the path.
+     * 
+     * @return the node or <code>null</code> for an intermediate path
+     */
+    public HalcyonNodeInterface getNode()
+    {
+      return mNode;
+    }
+
+    /**
+     * Tells whether longer paths start with this one.
+     * 
+     * @return true if the path has children
+     */
+    public boolean hasChildren()
+    {
+      return mHasChildren;
+    }
+  }
+
+  /**
+   * Tells whether a name is a path of several segments.
+   * 
+   * @param pName
+   *          the name
+   * @return true if the name contains a separator
+   */
+  public static boolean isPath(String pName)
+  {
+    return pName.indexOf(cSeparator) >= 0;
+  }
+
+  /**
+   * Gets the parent of a path.
+   * 
+   * @param pPath
+   *          the path
+   * @return the parent path, or "" for a single segment
+   */
+  public static String getParent(String pPath)
+  {
+    final int lIndex = pPath.lastIndexOf(cSeparator);
+    return lIndex < 0 ? "" : pPath.substring(0, lIndex);
+  }
+
+  /**
+   * Gets the node with the given path.
+   * 
+   * @param pPath
+   *          the path
+   * @return the node or <code>null</code>
+   */
+  public synchronized HalcyonNodeInterface get(String pPath)
+  {
+    final Entry lEntry = find(pPath);
+    return lEntry == null ? null : lEntry.mNode;
+  }
+
+  /**
+   * Gets the children of a path, sorted by segment.
+   * 
+   * @param pPath
+   *          the path, "" for the top level
+   * @return the children
+   */
+  public synchronized List<Child> getChildren(String pPath)
+  {
+    final Entry lEntry = pPath.isEmpty() ? mRoot : find(pPath);
+    if (lEntry == null || lEntry.mChildren == null)
+      return Collections.emptyList();
+
+    List<Child> lChildren = new ArrayList<>(lEntry.mChildren.size());
+    for (Entry lChild : lEntry.mChildren.values())
+      lChildren.add(new Child(lChild));
+    return lChildren;
+  }
+
+  /**
+   * Gets the nodes whose path is <code>pPath</code> or starts with
+   * <code>pPath</code> followed by a separator, depth first.
+   * 
+   * @param pPath
+   *          the path of the subtree
+   * @return the nodes of the subtree
+   */
+  public synchronized List<HalcyonNodeInterface> getSubtree(String pPath)
+  {
+    List<HalcyonNodeInterface> lNodes = new ArrayList<>();
+    final Entry lEntry = pPath.isEmpty() ? mRoot : find(pPath);
+    if (lEntry != null)
+      collect(lEntry, lNodes);
+    return lNodes;
+  }
+
+  /**
+   * Gets the nodes whose path starts with a prefix, which may end in the
+   * middle of a segment, depth first.
+   * 
+   * @param pPrefix
+   *          the prefix
+   * @return the matching nodes
+   */
+  public synchronized List<HalcyonNodeInterface> getByPrefix(String pPrefix)
+  {
+    List<HalcyonNodeInterface> lNodes = new ArrayList<>();
+    final int lIndex = pPrefix.lastIndexOf(cSeparator);
+    final Entry lParent = lIndex < 0 ? mRoot
+                                     : find(pPrefix.substring(0, lIndex));
+    if (lParent == null || lParent.mChildren == null)
+      return lNodes;
+
+    // the segments starting with the partial one are consecutive
+    final String lPartial = pPrefix.substring(lIndex + 1);
+    for (Entry lChild : lParent.mChildren.subMap(lPartial,
+                                                 true,
+                                                 lPartial + Character.MAX_VALUE,
+                                                 true)
+                                         .values())
+      collect(lChild, lNodes);
+    return lNodes;
+  }
+
+  synchronized void put(String pPath, HalcyonNodeInterface pNode)
+  {
+    Entry lEntry = mRoot;
+    int lStart = 0;
+    while (true)
+    {
+      int lEnd = pPath.indexOf(cSeparator, lStart);
+      if (lEnd < 0)
+        lEnd = pPath.length();
+      lEntry = lEntry.child(pPath.substring(lStart, lEnd),
+                            pPath.substring(0, lEnd));
+      if (lEnd == pPath.length())
+        break;
+      lStart = lEnd + 1;
+    }
+    lEntry.mNode = pNode;
+  }
+
+  synchronized void remove(String pPath, HalcyonNodeInterface pNode)
+  {
+    Entry lEntry = find(pPath);
+    if (lEntry == null || lEntry.mNode != pNode)
+      return;
+
+    lEntry.mNode = null;
+    // prune the entries left without node nor children
+    while (lEntry != mRoot && lEntry.mNode == null
+           && (lEntry.mChildren == null || lEntry.mChildren.isEmpty()))
+    {
+      lEntry.mParent.mChildren.remove(lEntry.mSegment);
+      lEntry = lEntry.mParent;
+    }
+  }
+
+  private Entry find(String pPath)
+  {
+    Entry lEntry = mRoot;
+    int lStart = 0;
+    while (lEntry != null)
+    {
+      int lEnd = pPath.indexOf(cSeparator, lStart);
+      if (lEnd < 0)
+        lEnd = pPath.length();
+      lEntry = lEntry.mChildren == null ? null
+                                        : lEntry.mChildren.get(pPath.substring(lStart,
+                                                                               lEnd));
+      if (lEnd == pPath.length())
+        break;
+      lStart = lEnd + 1;
+    }
+    return lEntry;
+  }
+
+  private static void collect(Entry pEntry, List<HalcyonNodeInterface> pNodes)
+  {
+    if (pEntry.mNode != null)
+      pNodes.add(pEntry.mNode);
+    if (pEntry.mChildren != null)
+      for (Entry lChild : pEntry.mChildren.values())
+        collect(lChild, pNodes);
+  }
+
+  private static class Entry
+  {
+    final Entry mParent;
+    final String mSegment;
+    final String mPath;
+    NavigableMap<String, Entry> mChildren;
+    HalcyonNodeInterface mNode;
+
+    Entry(Entry pParent, String pSegment, String pPath)
+    {
+      mParent = pParent;
+      mSegment = pSegment;
+      mPath = pPath;
+    }
+
+    Entry child(String pSegment, String pPath)
+    {
+      if (mChildren == null)
+        mChildren = new TreeMap<>();
+      Entry lChild = mChildren.get(pSegment);
+      if (lChild == null)
+      {
+        lChild = new Entry(this, pSegment, pPath);
+        mChildren.put(pSegment, lChild);
+      }
+      return lChild;
+    }
+  }
+}
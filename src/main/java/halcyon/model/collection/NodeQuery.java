@@ -0,0 +1,155 @@
+package halcyon.model.collection;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import halcyon.model.node.HalcyonNodeInterface;
+import halcyon.model.node.HalcyonNodeType;
+
+/**
+ * An immutable filter on Halcyon nodes: required tag values, an optional type
+ * and an optional predicate, all of which must match. A
+ * {@link HalcyonNodeRepository} answers the tag and type conditions from its
+ * indices, starting from the smallest candidate set, and only evaluates the
+ * predicate on the candidates left.
+ *
+ * <pre>
+ * NodeQuery cameras = NodeQuery.all()
+ *                              .withTag(HalcyonNodeInterface.cDeviceClassTag,
+ *                                       &quot;camera&quot;)
+ *                              .withTag(HalcyonNodeInterface.cChannelTag, &quot;2&quot;);
+ * </pre>
+ */
+public class NodeQuery implements Predicate<HalcyonNodeInterface>
+{
+  private static final NodeQuery cAll =
+                                      new NodeQuery(Collections.emptyMap(),
+                                                    null,
+                                                    null);
+
+  private final Map<String, String> tags;
+  private final HalcyonNodeType type;
+  private final Predicate<? super HalcyonNodeInterface> predicate;
+
+  private NodeQuery(Map<String, String> tags,
+                    HalcyonNodeType type,
+                    Predicate<? super HalcyonNodeInterface> predicate)
+  {
+    this.tags = tags;
+    this.type = type;
+    this.predicate = predicate;
+  }
+
+  /**
+   * Gets the query matching every node.
+   *
+   * @return the query
+   */
+  public static NodeQuery all()
+  {
+    return cAll;
+  }
+
+  /**
+   * Gets a query additionally requiring a tag value.
+   *
+   * @param key
+   *          the tag key
+   * @param value
+   *          the required value
+   * @return the new query
+   */
+  public NodeQuery withTag(String key, String value)
+  {
+    Map<String, String> newTags = new LinkedHashMap<>(tags);
+    newTags.put(key, value);
+    return new NodeQuery(Collections.unmodifiableMap(newTags),
+                         type,
+                         predicate);
+  }
+
+  /**
+   * Gets a query additionally requiring a node type.
+   *
+   * @param type
+   *          the required type
+   * @return the new query
+   */
+  public NodeQuery ofType(HalcyonNodeType type)
+  {
+    return new NodeQuery(tags, type, predicate);
+  }
+
+  /**
+   * Gets a query additionally requiring a predicate, evaluated after the
+   * indexed conditions.
+   *
+   * @param condition
+   *          the predicate
+   * @return the new query
+   */
+  public NodeQuery matching(Predicate<? super HalcyonNodeInterface> condition)
+  {
+    if (predicate == null)
+      return new NodeQuery(tags, type, condition);
+
+    final Predicate<? super HalcyonNodeInterface> first = predicate;
+    return new NodeQuery(tags,
+                         type,
+                         node -> first.test(node) && condition.test(node));
+  }
+
+  /**
+   * Gets the required tag values.
+   *
+   * @return the tag values by key
+   */
+  public Map<String, String> getTags()
+  {
+    return tags;
+  }
+
+  /**
+   * Gets the required type.
+   *
+   * @return the type or <code>null</code>
+   */
+  public HalcyonNodeType getType()
+  {
+    return type;
+  }
+
+  /**
+   * Tests a node against the current tags of the node.
+   *
+   * @param node
+   *          the node
+   * @return true if the node matches
+   */
+  @Override
+  public boolean test(HalcyonNodeInterface node)
+  {
+    return test(node, node.getTags());
+  }
+
+  /**
+   * Tests a node, reading its tags from the given map.
+   */
+  boolean test(HalcyonNodeInterface node, Map<String, String> nodeTags)
+  {
+    if (type != null && node.getType() != type)
+      return false;
+    for (Map.Entry<String, String> entry : tags.entrySet())
+      if (!entry.getValue().equals(nodeTags.get(entry.getKey())))
+        return false;
+    return predicate == null || predicate.test(node);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "NodeQuery [tags=" + tags + ", type=" + type + "]";
+  }
+}
@@ -0,0 +1,196 @@
+package halcyon.model.collection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import halcyon.model.node.HalcyonNodeInterface;
+
+/**
+ * Live result of a {@link NodeQuery} on a {@link HalcyonNodeRepository}. The
+ * view is updated incrementally from the change batches of the repository:
+ * only the added and removed nodes are tested, never the whole repository.
+ * Updates happen on the event executor of the repository, in the order of the
+ * modifications, and the listeners of the view then receive the part of the
+ * batch that changed the view.
+ * <p>
+ * The view can be read from any thread. It stops being updated once closed or
+ * no longer referenced.
+ */
+public class NodeView implements Iterable<HalcyonNodeInterface>, Subscription
+{
+  private final HalcyonNodeRepository repository;
+
+  private final NodeQuery query;
+
+  private final Set<HalcyonNodeInterface> nodes = ConcurrentHashMap.newKeySet();
+
+  private final ListenerList<HalcyonNodeRepositoryBatchListener> listeners =
+                                                                           new ListenerList<>();
+
+  /** registered weakly, so that it lives as long as the view */
+  private final HalcyonNodeRepositoryBatchListener updater =
+                                                           this::nodesChanged;
+
+  private Subscription subscription;
+
+  NodeView(HalcyonNodeRepository repository,
+           NodeQuery query,
+           Collection<HalcyonNodeInterface> initialNodes)
+  {
+    this.repository = repository;
+    this.query = query;
+    nodes.addAll(initialNodes);
+    subscription = repository.addWeakListener(updater);
+  }
+
+  /**
+   * Gets the query of this view.
+   *
+   * @return the query
+   */
+  public NodeQuery getQuery()
+  {
+    return query;
+  }
+
+  /**
+   * Gets the number of matching nodes.
+   *
+   * @return the number of nodes
+   */
+  public int size()
+  {
+    return nodes.size();
+  }
+
+  /**
+   * Tells whether there is no matching node.
+   *
+   * @return true if empty
+   */
+  public boolean isEmpty()
+  {
+    return nodes.isEmpty();
+  }
+
+  /**
+   * Tells whether a node is in this view.
+   *
+   * @param node
+   *          the node
+   * @return true if the node matches
+   */
+  public boolean contains(HalcyonNodeInterface node)
+  {
+    return nodes.contains(node);
+  }
+
+  /**
+   * Gets a copy of the matching nodes, in no particular order.
+   *
+   * @return the nodes
+   */
+  public List<HalcyonNodeInterface> getNodes()
+  {
+    return new ArrayList<>(nodes);
+  }
+
+  /**
+   * Streams the matching nodes without copying them.
+   *
+   * @return the stream
+   */
+  public Stream<HalcyonNodeInterface> stream()
+  {
+    return nodes.stream();
+  }
+
+  /**
+   * Iterates over the matching nodes, not failing on concurrent updates.
+   */
+  @Override
+  public Iterator<HalcyonNodeInterface> iterator()
+  {
+    return Collections.unmodifiableSet(nodes).iterator();
+  }
+
+  /**
+   * Adds an observer notified of the nodes entering and leaving this view.
+   *
+   * @param listener
+   *          the new observer
+   */
+  public void addListener(HalcyonNodeRepositoryBatchListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /**
+   * Adds an observer, like
+   * {@link #addListener(HalcyonNodeRepositoryBatchListener)}, and returns a
+   * handle removing it.
+   *
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  public Subscription subscribe(HalcyonNodeRepositoryBatchListener listener)
+  {
+    return listeners.add(listener);
+  }
+
+  /**
+   * Removes an observer from this view.
+   *
+   * @param listener
+   *          the observer to remove
+   */
+  public void removeListener(HalcyonNodeRepositoryBatchListener listener)
+  {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Stops updating this view.
+   */
+  @Override
+  public void close()
+  {
+    subscription.close();
+  }
+
+  @Override
+  public boolean isActive()
+  {
+    return subscription.isActive();
+  }
+
+  private void nodesChanged(HalcyonNodeRepositoryChange change)
+  {
+    // a node may appear again if its batch was pending at creation
+    List<HalcyonNodeInterface> removed = new ArrayList<>();
+    for (HalcyonNodeInterface node : change.getRemoved())
+      if (nodes.remove(node))
+        removed.add(node);
+
+    List<HalcyonNodeInterface> added = new ArrayList<>();
+    for (HalcyonNodeInterface node : change.getAdded())
+      if (repository.matches(query, node) && nodes.add(node))
+        added.add(node);
+
+    if (removed.isEmpty() && added.isEmpty())
+      return;
+
+    HalcyonNodeRepositoryChange viewChange =
+                                           new HalcyonNodeRepositoryChange(removed,
+                                                                           added);
+    listeners.forEach(HalcyonNodeRepositoryBatchListener::nodesChanged,
+                      viewChange);
+  }
+}
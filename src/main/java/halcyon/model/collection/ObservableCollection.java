@@ -1,21 +1,85 @@
 package halcyon.model.collection;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * ObservableCollection
+ * <p>
+ * Items are kept in an array that is replaced, never modified, on every
+ * change, and are indexed by a key computed when they are added. Reads, key
+ * lookups and iterations take no lock and see a consistent snapshot; changes
+ * are serialized and cost a copy of the array, which suits collections read
+ * far more often than they change.
+ * <p>
+ * Listeners, registered strongly or weakly, are notified in the order of the
+ * changes: changes are queued under the lock that orders them, and the queue
+ * is drained by one modifying thread at a time. A listener may therefore be
+ * notified on the thread of a concurrent change, and a change made by a
+ * listener is notified once the listener returns.
  */
-public class ObservableCollection<T>
+public class ObservableCollection<T> implements Iterable<T>
 {
+  private static final Logger LOGGER =
+                                     Logger.getLogger(ObservableCollection.class.getName());
+
+  private static final Object[] cEmpty = new Object[0];
+
   /**
    * observers of this repository, will be informed whenever items are added or
    * removed
    */
-  private ArrayList<ObservableCollectionListener<T>> listeners =
-                                                               new ArrayList<>();
+  private final ListenerList<ObservableCollectionListener<T>> listeners =
+                                                                      new ListenerList<>();
+
+  /** the item collection in this repository, never modified once published */
+  private volatile Object[] collection = cEmpty;
+
+  /** the first item of each key */
+  private final Map<String, T> index = new ConcurrentHashMap<>();
+
+  /** computes the key of an item */
+  private final Function<? super T, String> keyExtractor;
+
+  /** changes not notified yet, in the order they were made */
+  private final Queue<Change<T>> changes = new ConcurrentLinkedQueue<>();
+
+  /** true while a thread notifies the queued changes */
+  private final AtomicBoolean notifying = new AtomicBoolean();
+
+  /**
+   * Instantiates a collection whose items are looked up by their
+   * {@link Object#toString() name}.
+   */
+  public ObservableCollection()
+  {
+    this(Object::toString);
+  }
 
-  /** the item collection in this repository */
-  private ArrayList<T> collection = new ArrayList<>();
+  /**
+   * Instantiates a collection whose items are looked up by the given key. The
+   * key of an item is computed once, when it is added; items with a
+   * <code>null</code> key are not indexed.
+   * 
+   * @param keyExtractor
+   *          computes the key of an item
+   */
+  public ObservableCollection(Function<? super T, String> keyExtractor)
+  {
+    this.keyExtractor = keyExtractor;
+  }
 
   /**
    * Adds an observer to this repository. The observer will be informed whenever
@@ -29,6 +93,32 @@ public class ObservableCollection<T>
     listeners.add(listener);
   }
 
+  /**
+   * Adds an observer to this collection, like
+   * {@link #addListener(ObservableCollectionListener)}, and returns a handle
+   * removing it.
+   * 
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  public Subscription subscribe(ObservableCollectionListener<T> listener)
+  {
+    return listeners.add(listener);
+  }
+
+  /**
+   * Adds an observer that is removed once no longer referenced elsewhere.
+   * 
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  public Subscription addWeakListener(ObservableCollectionListener<T> listener)
+  {
+    return listeners.addWeak(listener);
+  }
+
   /**
    * Removes an observer from this collection.
    * 
@@ -48,9 +138,18 @@ public class ObservableCollection<T>
    */
   public void add(T item)
   {
-    collection.add(item);
-    for (ObservableCollectionListener listener : listeners.toArray(new ObservableCollectionListener[listeners.size()]))
-      listener.itemAdded(item);
+    synchronized (this)
+    {
+      final Object[] lItems = collection;
+      Object[] lNewItems = Arrays.copyOf(lItems, lItems.length + 1);
+      lNewItems[lItems.length] = item;
+      final String lKey = keyExtractor.apply(item);
+      if (lKey != null)
+        index.putIfAbsent(lKey, item);
+      collection = lNewItems;
+      changes.add(new Change<>(true, item));
+    }
+    notifyChanges();
   }
 
   /**
@@ -61,11 +160,30 @@ public class ObservableCollection<T>
    */
   public void remove(T item)
   {
-    if (collection.remove(item))
+    synchronized (this)
     {
-      for (ObservableCollectionListener listener : listeners.toArray(new ObservableCollectionListener[listeners.size()]))
-        listener.itemRemoved(item);
+      final Object[] lItems = collection;
+      int lIndex = -1;
+      for (int i = 0; i < lItems.length && lIndex < 0; i++)
+        if (Objects.equals(lItems[i], item))
+          lIndex = i;
+      if (lIndex < 0)
+        return;
+
+      @SuppressWarnings("unchecked")
+      final T lRemoved = (T) lItems[lIndex];
+      Object[] lNewItems = new Object[lItems.length - 1];
+      System.arraycopy(lItems, 0, lNewItems, 0, lIndex);
+      System.arraycopy(lItems,
+                       lIndex + 1,
+                       lNewItems,
+                       lIndex,
+                       lItems.length - lIndex - 1);
+      collection = lNewItems;
+      reindex(keyExtractor.apply(lRemoved), lRemoved, lNewItems);
+      changes.add(new Change<>(false, item));
     }
+    notifyChanges();
   }
 
   /**
@@ -75,7 +193,7 @@ public class ObservableCollection<T>
    */
   public int getCount()
   {
-    return collection.size();
+    return collection.length;
   }
 
   /**
@@ -85,14 +203,15 @@ public class ObservableCollection<T>
    *          the location of the item
    * @return the item
    */
+  @SuppressWarnings("unchecked")
   public T get(int index)
   {
-    return collection.get(index);
+    return (T) collection[index];
   }
 
   /**
-   * Gets the first item with the {@link Object#toString() name}
-   * <code>name</code>.
+   * Gets the first item with the key <code>name</code>, by default its
+   * {@link Object#toString() name}.
    * 
    * @param name
    *          the name of the item
@@ -100,15 +219,130 @@ public class ObservableCollection<T>
    */
   public T get(String name)
   {
-    for (T item : collection)
-      if (item.toString().equals(name))
-        return item;
+    return index.get(name);
+  }
+
+  /**
+   * Gets a snapshot of the items: the returned list is unmodifiable and does
+   * not change when the collection does.
+   * 
+   * @return the items
+   */
+  public List<T> getList()
+  {
+    return new Snapshot<>(collection);
+  }
+
+  /**
+   * Iterates over a snapshot of the items.
+   * 
+   * @return the iterator
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    return getList().iterator();
+  }
+
+  /**
+   * Notifies the queued changes, unless another thread is doing it.
+   */
+  private void notifyChanges()
+  {
+    do
+    {
+      if (!notifying.compareAndSet(false, true))
+        return;
+      try
+      {
+        Change<T> change;
+        while ((change = changes.poll()) != null)
+          listeners.forEach(ObservableCollection::notify, change);
+      }
+      finally
+      {
+        notifying.set(false);
+      }
+    }
+    // a change queued after the last poll may have found the flag still set
+    while (!changes.isEmpty());
+  }
 
-    return null;
+  private static <T> void notify(ObservableCollectionListener<T> listener,
+                                 Change<T> change)
+  {
+    try
+    {
+      if (change.added)
+        listener.itemAdded(change.item);
+      else
+        listener.itemRemoved(change.item);
+    }
+    catch (RuntimeException e)
+    {
+      // a failing listener must not hold back the following changes
+      LOGGER.log(Level.SEVERE, "Collection listener failed", e);
+    }
   }
 
-  public ArrayList<T> getList()
+  /**
+   * An item added or removed.
+   */
+  private static class Change<T>
   {
-    return collection;
+    final boolean added;
+    final T item;
+
+    Change(boolean added, T item)
+    {
+      this.added = added;
+      this.item = item;
+    }
+  }
+
+  /**
+   * Points the key of a removed item to the next item with the same key, if
+   * any.
+   */
+  private void reindex(String key, T removed, Object[] items)
+  {
+    if (key == null || index.get(key) != removed)
+      return;
+
+    for (Object lItem : items)
+    {
+      @SuppressWarnings("unchecked")
+      final T lCandidate = (T) lItem;
+      if (key.equals(keyExtractor.apply(lCandidate)))
+      {
+        index.put(key, lCandidate);
+        return;
+      }
+    }
+    index.remove(key);
+  }
+
+  private static class Snapshot<T> extends AbstractList<T> implements
+                                                         RandomAccess
+  {
+    private final Object[] items;
+
+    Snapshot(Object[] items)
+    {
+      this.items = items;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T get(int index)
+    {
+      return (T) items[index];
+    }
+
+    @Override
+    public int size()
+    {
+      return items.length;
+    }
   }
 }
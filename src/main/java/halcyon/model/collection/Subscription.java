@@ -0,0 +1,22 @@
+package halcyon.model.collection;
+
+/**
+ * Handle of a listener registration; closing it unregisters the listener.
+ */
+public interface Subscription extends AutoCloseable
+{
+  /**
+   * Unregisters the listener. Closing an inactive subscription has no effect.
+   */
+  @Override
+  public void close();
+
+  /**
+   * Tells whether the listener is still registered: the subscription was not
+   * closed and, for a weak registration, the listener was not garbage
+   * collected.
+   * 
+   * @return true if the listener is registered
+   */
+  public boolean isActive();
+}
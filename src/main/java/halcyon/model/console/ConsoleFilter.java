@@ -0,0 +1,189 @@
+package halcyon.model.console;
+
+import java.util.EnumSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable console line filter combining a set of levels with an optional
+ * case-insensitive substring or regular expression.
+ */
+public class ConsoleFilter
+{
+  private final EnumSet<ConsoleLevel> mLevels;
+  private final String mSubstring;
+  private final Pattern mPattern;
+
+  private ConsoleFilter(EnumSet<ConsoleLevel> pLevels,
+                        String pSubstring,
+                        Pattern pPattern)
+  {
+    mLevels = pLevels;
+    mSubstring = pSubstring;
+    mPattern = pPattern;
+  }
+
+  /**
+   * Creates a filter matching lines of the given levels.
+   * 
+   * @param pLevels
+   *          the levels
+   * @return the filter
+   */
+  public static ConsoleFilter levels(EnumSet<ConsoleLevel> pLevels)
+  {
+    return new ConsoleFilter(EnumSet.copyOf(pLevels), null, null);
+  }
+
+  /**
+   * Creates a filter matching lines that contain the given text, ignoring
+   * case.
+   * 
+   * @param pLevels
+   *          the levels
+   * @param pSubstring
+   *          the text
+   * @return the filter
+   */
+  public static ConsoleFilter substring(EnumSet<ConsoleLevel> pLevels,
+                                        String pSubstring)
+  {
+    char[] lFolded = pSubstring.toCharArray();
+    for (int i = 0; i < lFolded.length; i++)
+      lFolded[i] = fold(lFolded[i]);
+    return new ConsoleFilter(EnumSet.copyOf(pLevels),
+                             new String(lFolded),
+                             null);
+  }
+
+  /**
+   * Creates a filter matching lines in which the given regular expression
+   * finds a match, ignoring case.
+   * 
+   * @param pLevels
+   *          the levels
+   * @param pRegex
+   *          the regular expression
+   * @return the filter
+   * @throws java.util.regex.PatternSyntaxException
+   *           if the regular expression is invalid
+   */
+  public static ConsoleFilter regex(EnumSet<ConsoleLevel> pLevels,
+                                    String pRegex)
+  {
+    return new ConsoleFilter(EnumSet.copyOf(pLevels),
+                             null,
+                             Pattern.compile(pRegex,
+                                             Pattern.CASE_INSENSITIVE));
+  }
+
+  /**
+   * Gets the accepted levels.
+   * 
+   * @return the levels
+   */
+  public EnumSet<ConsoleLevel> getLevels()
+  {
+    return EnumSet.copyOf(mLevels);
+  }
+
+  /**
+   * Checks whether a level is accepted.
+   * 
+   * @param pLevel
+   *          the level
+   * @return true if lines of this level can match
+   */
+  public boolean accepts(ConsoleLevel pLevel)
+  {
+    return mLevels.contains(pLevel);
+  }
+
+  /**
+   * Folds the case of a character the same way
+   * {@link String#regionMatches(boolean, int, String, int, int)} compares
+   * characters, so that case-insensitive matches are never missed by an index
+   * built on folded characters.
+   * 
+   * @param c
+   *          the character
+   * @return the folded character
+   */
+  public static char fold(char c)
+  {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  /**
+   * Gets the case-folded substring, if this is a substring filter.
+   * 
+   * @return the substring or null
+   */
+  public String getSubstring()
+  {
+    return mSubstring;
+  }
+
+  /**
+   * Checks whether only the level of a line matters.
+   * 
+   * @return true if the text of lines is not looked at
+   */
+  public boolean isLevelOnly()
+  {
+    return (mSubstring == null || mSubstring.isEmpty())
+           && mPattern == null;
+  }
+
+  /**
+   * Tests a line.
+   * 
+   * @param pLine
+   *          the line
+   * @return true if the line matches
+   */
+  public boolean matches(ConsoleLine pLine)
+  {
+    return matches(pLine.getLevel(), pLine.getText());
+  }
+
+  /**
+   * Tests a text of a given level.
+   * 
+   * @param pLevel
+   *          the level
+   * @param pText
+   *          the text
+   * @return true if the text matches
+   */
+  public boolean matches(ConsoleLevel pLevel, String pText)
+  {
+    if (!mLevels.contains(pLevel))
+      return false;
+
+    if (mPattern != null)
+    {
+      Matcher lMatcher = mPattern.matcher(pText);
+      return lMatcher.find();
+    }
+
+    if (mSubstring != null && !mSubstring.isEmpty())
+      return containsIgnoreCase(pText, mSubstring);
+
+    return true;
+  }
+
+  private static boolean containsIgnoreCase(String pText,
+                                            String pFoldedNeedle)
+  {
+    final int lLast = pText.length() - pFoldedNeedle.length();
+    for (int i = 0; i <= lLast; i++)
+      if (pText.regionMatches(true,
+                              i,
+                              pFoldedNeedle,
+                              0,
+                              pFoldedNeedle.length()))
+        return true;
+    return false;
+  }
+}
@@ -0,0 +1,207 @@
+package halcyon.model.console;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Thread-safe console history: a {@link ConsoleLineStore} together with a
+ * {@link ConsoleLineIndex} over the lines it holds. Lines get an absolute line
+ * number that never changes, so that filter results stay valid while older
+ * lines are evicted. Appending happens on the JavaFX application thread while
+ * filtering may run on any thread; the history is locked per chunk of lines
+ * so that filtering never holds up appending for long.
+ */
+public class ConsoleHistory
+{
+  private final ConsoleLineStore mStore;
+
+  private final ConsoleLineIndex mIndex = new ConsoleLineIndex();
+
+  /** absolute number of the line at store index 0 */
+  private long mFirst = 0;
+
+  /**
+   * Instantiates a new history.
+   * 
+   * @param pStore
+   *          the store holding the lines
+   */
+  public ConsoleHistory(ConsoleLineStore pStore)
+  {
+    mStore = pStore;
+  }
+
+  /**
+   * Gets the number of lines held.
+   * 
+   * @return the number of lines
+   */
+  public synchronized int size()
+  {
+    return mStore.size();
+  }
+
+  /**
+   * Gets the absolute number of the oldest line held.
+   * 
+   * @return the absolute line number
+   */
+  public synchronized long getFirstIndex()
+  {
+    return mFirst;
+  }
+
+  /**
+   * Gets the absolute number the next appended line will get.
+   * 
+   * @return the absolute line number
+   */
+  public synchronized long getEndIndex()
+  {
+    return mFirst + mStore.size();
+  }
+
+  /**
+   * Gets the index'th line held, 0 being the oldest.
+   * 
+   * @param pIndex
+   *          the index
+   * @return the line
+   */
+  public synchronized ConsoleLine get(int pIndex)
+  {
+    return mStore.get(pIndex);
+  }
+
+  /**
+   * Gets a line by absolute number.
+   * 
+   * @param pIndex
+   *          the absolute line number
+   * @return the line or null if it is not held anymore
+   */
+  public synchronized ConsoleLine getAbsolute(long pIndex)
+  {
+    final long lOffset = pIndex - mFirst;
+    if (lOffset < 0 || lOffset >= mStore.size())
+      return null;
+    return mStore.get((int) lOffset);
+  }
+
+  /**
+   * Appends and indexes lines.
+   * 
+   * @param pLines
+   *          the lines
+   * @return the number of lines evicted
+   */
+  public synchronized int addAll(List<ConsoleLine> pLines)
+  {
+    final int lEvicted = mStore.addAll(pLines);
+    mFirst += lEvicted;
+
+    // lines skipped by an oversized batch are not held, do not index them
+    final long lNewEnd = mFirst + mStore.size();
+    final int lHeld = (int) Math.min(pLines.size(), lNewEnd - mFirst);
+    final int lSkipped = pLines.size() - lHeld;
+    final long lStart = lNewEnd - lHeld;
+    for (int i = 0; i < lHeld; i++)
+      mIndex.add(lStart + i, pLines.get(lSkipped + i));
+    mIndex.evictBefore(mFirst);
+
+    return lEvicted;
+  }
+
+  /**
+   * Removes all lines. Absolute line numbers keep increasing.
+   */
+  public synchronized void clear()
+  {
+    mFirst += mStore.size();
+    mStore.clear();
+    mIndex.clear();
+  }
+
+  /**
+   * Removes all lines and closes the store.
+   */
+  public synchronized void close()
+  {
+    mFirst += mStore.size();
+    mStore.close();
+    mIndex.clear();
+  }
+
+  /**
+   * Finds the lines matching a filter.
+   * 
+   * @param pFilter
+   *          the filter
+   * @param pEnd
+   *          the absolute line number to stop at (exclusive)
+   * @param pCancelled
+   *          polled between chunks, the search is abandoned when it returns
+   *          true
+   * @return the absolute numbers of the matching lines in increasing order,
+   *         or null if cancelled
+   */
+  public long[] filter(ConsoleFilter pFilter,
+                       long pEnd,
+                       BooleanSupplier pCancelled)
+  {
+    final int[] lGrams = pFilter.getSubstring() == null ? new int[0]
+                                                        : ConsoleLineIndex.grams(pFilter.getSubstring());
+    final long[] lCandidates =
+                             new long[ConsoleLineIndex.cChunkSize / 64];
+
+    long[] lMatches = new long[256];
+    int lCount = 0;
+
+    long lChunk;
+    synchronized (this)
+    {
+      lChunk = mFirst >>> ConsoleLineIndex.cChunkShift;
+    }
+
+    for (; lChunk << ConsoleLineIndex.cChunkShift < pEnd; lChunk++)
+    {
+      if (pCancelled.getAsBoolean())
+        return null;
+
+      synchronized (this)
+      {
+        if (!mIndex.candidates(lChunk, pFilter, lGrams, lCandidates))
+          continue;
+
+        final long lBase = lChunk << ConsoleLineIndex.cChunkShift;
+        for (int w = 0; w < lCandidates.length; w++)
+        {
+          long lWord = lCandidates[w];
+          while (lWord != 0)
+          {
+            final long lIndex = lBase + w * 64
+                                + Long.numberOfTrailingZeros(lWord);
+            lWord &= lWord - 1;
+
+            if (lIndex < mFirst || lIndex >= pEnd)
+              continue;
+
+            if (!pFilter.isLevelOnly())
+            {
+              ConsoleLine lLine = getAbsolute(lIndex);
+              if (lLine == null || !pFilter.matches(lLine))
+                continue;
+            }
+
+            if (lCount == lMatches.length)
+              lMatches = Arrays.copyOf(lMatches, lCount * 2);
+            lMatches[lCount++] = lIndex;
+          }
+        }
+      }
+    }
+
+    return Arrays.copyOf(lMatches, lCount);
+  }
+}
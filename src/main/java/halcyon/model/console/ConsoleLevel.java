@@ -0,0 +1,30 @@
+package halcyon.model.console;
+
+/**
+ * Severity level of a console line
+ */
+public enum ConsoleLevel
+{
+ INFO("entry-text"),
+ WARN("entry-error"),
+ ERROR("entry-error"),
+ INPUT("entry-input"),
+ NOTICE("entry-notice");
+
+  private final String mStyleClass;
+
+  private ConsoleLevel(String pStyleClass)
+  {
+    mStyleClass = pStyleClass;
+  }
+
+  /**
+   * Gets the style class used for rendering lines of this level.
+   * 
+   * @return the style class
+   */
+  public String getStyleClass()
+  {
+    return mStyleClass;
+  }
+}
@@ -0,0 +1,260 @@
+package halcyon.model.console;
+
+import java.util.function.Consumer;
+
+/**
+ * A single line of console output together with its level and, when it comes
+ * from a {@link ConsoleRecord}, the record's timestamp, thread and source.
+ */
+public class ConsoleLine
+{
+  /** color value used when a line has no explicit color */
+  public static final int cNoColor = -1;
+
+  private final ConsoleLevel mLevel;
+  private final String mText;
+  private final int mColor;
+  private final long mTimestamp;
+  private final String mThread;
+  private final String mSource;
+
+  /** number of consecutive occurrences collapsed into this line */
+  private int mRepeatCount = 1;
+
+  /**
+   * Instantiates a new console line.
+   * 
+   * @param pLevel
+   *          the level
+   * @param pText
+   *          the text without line separator
+   */
+  public ConsoleLine(ConsoleLevel pLevel, String pText)
+  {
+    this(pLevel, pText, cNoColor);
+  }
+
+  /**
+   * Instantiates a new console line with an explicit color.
+   * 
+   * @param pLevel
+   *          the level
+   * @param pText
+   *          the text without line separator
+   * @param pColor
+   *          the RGB color or {@link #cNoColor}
+   */
+  public ConsoleLine(ConsoleLevel pLevel, String pText, int pColor)
+  {
+    this(pLevel, pText, pColor, ConsoleRecord.now(), null, null);
+  }
+
+  /**
+   * Instantiates a new console line with its metadata.
+   * 
+   * @param pLevel
+   *          the level
+   * @param pText
+   *          the text without line separator
+   * @param pColor
+   *          the RGB color or {@link #cNoColor}
+   * @param pTimestamp
+   *          the nanoseconds since the epoch
+   * @param pThread
+   *          the name of the logging thread, or null
+   * @param pSource
+   *          the source, or null
+   */
+  public ConsoleLine(ConsoleLevel pLevel,
+                     String pText,
+                     int pColor,
+                     long pTimestamp,
+                     String pThread,
+                     String pSource)
+  {
+    mLevel = pLevel;
+    mText = pText;
+    mColor = pColor;
+    mTimestamp = pTimestamp;
+    mThread = pThread;
+    mSource = pSource;
+  }
+
+  /**
+   * Gets the level.
+   * 
+   * @return the level
+   */
+  public ConsoleLevel getLevel()
+  {
+    return mLevel;
+  }
+
+  /**
+   * Gets the text.
+   * 
+   * @return the text
+   */
+  public String getText()
+  {
+    return mText;
+  }
+
+  /**
+   * Gets the RGB color.
+   * 
+   * @return the color or {@link #cNoColor}
+   */
+  public int getColor()
+  {
+    return mColor;
+  }
+
+  /**
+   * Gets the timestamp.
+   * 
+   * @return the nanoseconds since the epoch
+   */
+  public long getTimestamp()
+  {
+    return mTimestamp;
+  }
+
+  /**
+   * Gets the name of the thread that logged the line.
+   * 
+   * @return the thread name, or null
+   */
+  public String getThread()
+  {
+    return mThread;
+  }
+
+  /**
+   * Gets the source.
+   * 
+   * @return the source, or null
+   */
+  public String getSource()
+  {
+    return mSource;
+  }
+
+  /**
+   * Gets the number of UTF-8 bytes of the text, line separator included.
+   * 
+   * @return the byte count
+   */
+  public int getByteCount()
+  {
+    int lLength = 1;
+    for (int i = 0; i < mText.length(); i++)
+    {
+      char c = mText.charAt(i);
+      if (c < 0x80)
+        lLength++;
+      else if (c < 0x800)
+        lLength += 2;
+      else if (Character.isHighSurrogate(c))
+      {
+        lLength += 4;
+        i++;
+      }
+      else
+        lLength += 3;
+    }
+    return lLength;
+  }
+
+  /**
+   * Gets the number of consecutive occurrences of this line.
+   * 
+   * @return the repeat count, 1 for a line that was not repeated
+   */
+  public int getRepeatCount()
+  {
+    return mRepeatCount;
+  }
+
+  /**
+   * Counts further consecutive occurrences of this line. Only the thread
+   * rendering the line may call this.
+   * 
+   * @param pCount
+   *          the number of occurrences to add
+   */
+  public void addRepeats(int pCount)
+  {
+    mRepeatCount += pCount;
+  }
+
+  /**
+   * Tells whether a line repeats this one: same level, color and text,
+   * optionally regardless of the digits in the text.
+   * 
+   * @param pLine
+   *          the line
+   * @param pMaskDigits
+   *          whether any digit matches any other digit
+   * @return true if the line repeats this one
+   */
+  public boolean isRepeatedBy(ConsoleLine pLine, boolean pMaskDigits)
+  {
+    if (mLevel != pLine.mLevel || mColor != pLine.mColor
+        || mText.length() != pLine.mText.length())
+      return false;
+
+    if (!pMaskDigits)
+      return mText.equals(pLine.mText);
+
+    for (int i = 0; i < mText.length(); i++)
+    {
+      final char a = mText.charAt(i);
+      final char b = pLine.mText.charAt(i);
+      if (a != b && !(Character.isDigit(a) && Character.isDigit(b)))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString()
+  {
+    return mText;
+  }
+
+  /**
+   * Splits the message of a record into lines carrying the record's level,
+   * color and metadata. A trailing '\r' is removed from each line.
+   * 
+   * @param pRecord
+   *          the record
+   * @param pLines
+   *          receives the lines
+   */
+  public static void split(ConsoleRecord pRecord,
+                           Consumer<? super ConsoleLine> pLines)
+  {
+    final String lText = pRecord.getRawMessage();
+    final int lLength = lText.length();
+    int lStart = pRecord.getMessageStart();
+    while (lStart < lLength)
+    {
+      int lEnd = lText.indexOf('\n', lStart);
+      if (lEnd < 0)
+        lEnd = lLength;
+
+      int lLineEnd = lEnd;
+      if (lLineEnd > lStart && lText.charAt(lLineEnd - 1) == '\r')
+        lLineEnd--;
+
+      pLines.accept(new ConsoleLine(pRecord.getLevel(),
+                                    lText.substring(lStart, lLineEnd),
+                                    pRecord.getColor(),
+                                    pRecord.getTimestamp(),
+                                    pRecord.getThread(),
+                                    pRecord.getSource()));
+      lStart = lEnd + 1;
+    }
+  }
+}
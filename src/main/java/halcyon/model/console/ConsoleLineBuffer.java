@@ -0,0 +1,145 @@
+package halcyon.model.console;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-capacity ring buffer of console lines. Once full, appending a line
+ * evicts the oldest one. This class is not thread-safe; it is meant to be
+ * owned by the JavaFX application thread.
+ */
+public class ConsoleLineBuffer implements ConsoleLineStore
+{
+  private final ConsoleLine[] mLines;
+
+  /** absolute index of the oldest line */
+  private long mHead = 0;
+
+  /** absolute index one past the newest line */
+  private long mTail = 0;
+
+  /**
+   * Instantiates a new ring buffer.
+   * 
+   * @param pCapacity
+   *          the maximum number of lines kept
+   */
+  public ConsoleLineBuffer(int pCapacity)
+  {
+    if (pCapacity <= 0)
+      throw new IllegalArgumentException("Capacity must be positive: "
+                                         + pCapacity);
+    mLines = new ConsoleLine[pCapacity];
+  }
+
+  /**
+   * Gets the capacity.
+   * 
+   * @return the maximum number of lines kept
+   */
+  public int getCapacity()
+  {
+    return mLines.length;
+  }
+
+  /**
+   * Gets the number of lines currently held.
+   * 
+   * @return the number of lines
+   */
+  @Override
+  public int size()
+  {
+    return (int) (mTail - mHead);
+  }
+
+  /**
+   * Gets the total number of lines ever appended since the last clear.
+   * 
+   * @return the total number of lines
+   */
+  public long getTotalCount()
+  {
+    return mTail;
+  }
+
+  /**
+   * Gets the index'th line, 0 being the oldest line held.
+   * 
+   * @param pIndex
+   *          the index
+   * @return the line
+   */
+  @Override
+  public ConsoleLine get(int pIndex)
+  {
+    if (pIndex < 0 || pIndex >= size())
+      throw new IndexOutOfBoundsException("Index: " + pIndex
+                                          + ", Size: "
+                                          + size());
+    return mLines[slot(mHead + pIndex)];
+  }
+
+  @Override
+  public int addAll(List<ConsoleLine> pLines)
+  {
+    return addAll(pLines, null);
+  }
+
+  /**
+   * Appends lines, evicting the oldest ones if needed.
+   * 
+   * @param pLines
+   *          the lines to append
+   * @param pEvicted
+   *          receives the evicted lines (oldest first), including the lines of
+   *          an oversized batch that could not be held; may be null
+   * @return the number of lines that were held before the call and have been
+   *         evicted
+   */
+  public int addAll(List<ConsoleLine> pLines,
+                    Consumer<ConsoleLine> pEvicted)
+  {
+    final int lCapacity = mLines.length;
+    final int lCount = pLines.size();
+
+    // only the newest lines of an oversized batch can survive
+    final int lSkip = Math.max(0, lCount - lCapacity);
+    final int lKept = lCount - lSkip;
+
+    final int lEvict = Math.max(0, size() + lKept - lCapacity);
+    for (int i = 0; i < lEvict; i++)
+    {
+      final int lSlot = slot(mHead++);
+      if (pEvicted != null)
+        pEvicted.accept(mLines[lSlot]);
+      mLines[lSlot] = null;
+    }
+
+    // the buffer is empty when lines are skipped, so both ends can move
+    mHead += lSkip;
+    mTail += lSkip;
+    if (pEvicted != null)
+      for (int i = 0; i < lSkip; i++)
+        pEvicted.accept(pLines.get(i));
+
+    for (int i = lSkip; i < lCount; i++)
+      mLines[slot(mTail++)] = pLines.get(i);
+
+    return lEvict;
+  }
+
+  @Override
+  public void clear()
+  {
+    for (long i = mHead; i < mTail; i++)
+      mLines[slot(i)] = null;
+    mHead = 0;
+    mTail = 0;
+  }
+
+  private int slot(long pAbsoluteIndex)
+  {
+    return (int) (pAbsoluteIndex % mLines.length);
+  }
+}
@@ -0,0 +1,200 @@
+package halcyon.model.console;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Incremental index over console lines addressed by absolute line number.
+ * Lines are grouped into aligned chunks of {@link #cChunkSize} lines; each
+ * chunk keeps one bitmap per level marking the lines of that level, and a
+ * fixed-size bitmap of the hashed case-folded trigrams found in its lines.
+ * A substring query only needs to look at the lines of chunks containing all
+ * the trigrams of the substring, and a level query needs no line at all.
+ * This class is not thread-safe.
+ */
+public class ConsoleLineIndex
+{
+  /** log2 of the number of lines per chunk */
+  public static final int cChunkShift = 12;
+
+  /** number of lines per chunk */
+  public static final int cChunkSize = 1 << cChunkShift;
+
+  private static final int cGramBitsShift = 13;
+
+  private static final ConsoleLevel[] cLevels = ConsoleLevel.values();
+
+  /** chunks in order, the first one being chunk number mFirstChunk */
+  private final ArrayList<Chunk> mChunks = new ArrayList<>();
+
+  private long mFirstChunk = 0;
+
+  /**
+   * Indexes a line.
+   * 
+   * @param pIndex
+   *          the absolute line number, increasing from call to call
+   * @param pLine
+   *          the line
+   */
+  public void add(long pIndex, ConsoleLine pLine)
+  {
+    final long lChunkNumber = pIndex >>> cChunkShift;
+    if (mChunks.isEmpty())
+      mFirstChunk = lChunkNumber;
+    while (mFirstChunk + mChunks.size() <= lChunkNumber)
+      mChunks.add(new Chunk());
+
+    final Chunk lChunk = mChunks.get((int) (lChunkNumber - mFirstChunk));
+    final int lBit = (int) (pIndex & (cChunkSize - 1));
+    lChunk.levelBits(pLine.getLevel())[lBit >>> 6] |= 1L << lBit;
+
+    final String lText = pLine.getText();
+    final int lLength = lText.length();
+    if (lLength < 3)
+      return;
+
+    char c0 = ConsoleFilter.fold(lText.charAt(0));
+    char c1 = ConsoleFilter.fold(lText.charAt(1));
+    for (int i = 2; i < lLength; i++)
+    {
+      final char c2 = ConsoleFilter.fold(lText.charAt(i));
+      final int lGram = gramBit(c0, c1, c2);
+      lChunk.mGrams[lGram >>> 6] |= 1L << lGram;
+      c0 = c1;
+      c1 = c2;
+    }
+  }
+
+  /**
+   * Drops the chunks that only hold lines before the given line number.
+   * 
+   * @param pIndex
+   *          the absolute number of the oldest line still held
+   */
+  public void evictBefore(long pIndex)
+  {
+    final long lChunkNumber = pIndex >>> cChunkShift;
+    final int lCount = (int) Math.min(mChunks.size(),
+                                      Math.max(0,
+                                               lChunkNumber
+                                                  - mFirstChunk));
+    if (lCount > 0)
+    {
+      mChunks.subList(0, lCount).clear();
+      mFirstChunk += lCount;
+    }
+  }
+
+  /**
+   * Removes everything from the index.
+   */
+  public void clear()
+  {
+    mChunks.clear();
+    mFirstChunk = 0;
+  }
+
+  /**
+   * Computes the trigram bits a text requires.
+   * 
+   * @param pFoldedText
+   *          the case-folded text
+   * @return the trigram bits
+   */
+  public static int[] grams(String pFoldedText)
+  {
+    final int lCount = Math.max(0, pFoldedText.length() - 2);
+    int[] lGrams = new int[lCount];
+    for (int i = 0; i < lCount; i++)
+      lGrams[i] = gramBit(pFoldedText.charAt(i),
+                          pFoldedText.charAt(i + 1),
+                          pFoldedText.charAt(i + 2));
+    return lGrams;
+  }
+
+  /**
+   * Computes the lines of a chunk that may match a filter.
+   * 
+   * @param pChunkNumber
+   *          the chunk number, i.e. the absolute line number divided by
+   *          {@link #cChunkSize}
+   * @param pFilter
+   *          the filter
+   * @param pGrams
+   *          the trigram bits of the filter substring, empty if none
+   * @param pCandidates
+   *          receives one bit per candidate line, must hold
+   *          {@link #cChunkSize} bits
+   * @return false if no line of the chunk can match
+   */
+  public boolean candidates(long pChunkNumber,
+                            ConsoleFilter pFilter,
+                            int[] pGrams,
+                            long[] pCandidates)
+  {
+    Arrays.fill(pCandidates, 0);
+
+    final long lOffset = pChunkNumber - mFirstChunk;
+    if (lOffset < 0 || lOffset >= mChunks.size())
+      return false;
+    final Chunk lChunk = mChunks.get((int) lOffset);
+
+    for (int lGram : pGrams)
+      if ((lChunk.mGrams[lGram >>> 6] & (1L << lGram)) == 0)
+        return false;
+
+    boolean lAny = false;
+    for (int l = 0; l < cLevels.length; l++)
+    {
+      final long[] lBits = lChunk.mLevelBits[l];
+      if (lBits == null || !pFilter.accepts(cLevels[l]))
+        continue;
+      for (int i = 0; i < lBits.length; i++)
+        pCandidates[i] |= lBits[i];
+      lAny = true;
+    }
+    return lAny;
+  }
+
+  /**
+   * Gets the number of the first chunk held.
+   * 
+   * @return the chunk number
+   */
+  public long getFirstChunk()
+  {
+    return mFirstChunk;
+  }
+
+  /**
+   * Gets the number of chunks held.
+   * 
+   * @return the number of chunks
+   */
+  public int getChunkCount()
+  {
+    return mChunks.size();
+  }
+
+  private static int gramBit(char c0, char c1, char c2)
+  {
+    final int lHash = (c0 * 31 + c1) * 31 + c2;
+    return (lHash * 0x9E3779B9) >>> (32 - cGramBitsShift);
+  }
+
+  private static class Chunk
+  {
+    /** one bitmap per level, allocated when the level first occurs */
+    final long[][] mLevelBits = new long[cLevels.length][];
+    final long[] mGrams = new long[(1 << cGramBitsShift) / 64];
+
+    long[] levelBits(ConsoleLevel pLevel)
+    {
+      long[] lBits = mLevelBits[pLevel.ordinal()];
+      if (lBits == null)
+        lBits = mLevelBits[pLevel.ordinal()] = new long[cChunkSize / 64];
+      return lBits;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package halcyon.model.console;
+
+import java.util.List;
+
+/**
+ * Append-only store of console lines that may evict its oldest lines. Stores
+ * are not thread-safe; they are meant to be owned by the JavaFX application
+ * thread.
+ */
+public interface ConsoleLineStore
+{
+  /**
+   * Gets the number of lines currently held.
+   * 
+   * @return the number of lines
+   */
+  public int size();
+
+  /**
+   * Gets the index'th line, 0 being the oldest line held.
+   * 
+   * @param index
+   *          the index
+   * @return the line
+   */
+  public ConsoleLine get(int index);
+
+  /**
+   * Appends lines, evicting the oldest ones if needed.
+   * 
+   * @param lines
+   *          the lines to append
+   * @return the number of lines that were held before the call and have been
+   *         evicted
+   */
+  public int addAll(List<ConsoleLine> lines);
+
+  /**
+   * Removes all lines.
+   */
+  public void clear();
+
+  /**
+   * Removes all lines and releases the resources held by the store, e.g.
+   * files. The store must not be used afterwards.
+   */
+  default public void close()
+  {
+    clear();
+  }
+}
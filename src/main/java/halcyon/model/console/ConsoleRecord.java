@@ -0,0 +1,296 @@
+package halcyon.model.console;
+
+/**
+ * Structured console log record: level, timestamp, thread, source and
+ * message. Records are mutable so that they can be reused through a
+ * {@link ConsoleRecordPool}; once handed to a console, a record belongs to it
+ * and must not be touched by the producer anymore.
+ * <p>
+ * The message may span several lines; it is split into {@link ConsoleLine}s
+ * by the console, not by the producer.
+ */
+public class ConsoleRecord
+{
+  /** offset between {@link System#nanoTime()} and the epoch in nanoseconds */
+  private static final long cEpochOffsetNanos =
+                                              System.currentTimeMillis()
+                                                * 1_000_000L
+                                                - System.nanoTime();
+
+  private ConsoleLevel mLevel = ConsoleLevel.INFO;
+  private long mTimestamp;
+  private String mThread;
+  private String mSource;
+  private String mMessage = "";
+  private int mMessageStart = 0;
+  private int mColor = ConsoleLine.cNoColor;
+
+  /**
+   * Gets the current time in nanoseconds since the epoch, with the
+   * resolution of {@link System#nanoTime()}.
+   *
+   * @return the timestamp
+   */
+  public static long now()
+  {
+    return System.nanoTime() + cEpochOffsetNanos;
+  }
+
+  /**
+   * Fills this record with a message logged now from the current thread.
+   *
+   * @param pLevel
+   *          the level
+   * @param pSource
+   *          the source, e.g. a node name, or null
+   * @param pMessage
+   *          the message
+   * @return this record
+   */
+  public ConsoleRecord set(ConsoleLevel pLevel,
+                           String pSource,
+                           String pMessage)
+  {
+    mLevel = pLevel;
+    mTimestamp = now();
+    mThread = Thread.currentThread().getName();
+    mSource = pSource;
+    mMessage = pMessage;
+    mMessageStart = 0;
+    mColor = ConsoleLine.cNoColor;
+    return this;
+  }
+
+  /**
+   * Fills this record with a text written through
+   * {@link halcyon.view.console.TextAppender}, classified by its
+   * "[INFO]"/"[WARN]" prefix. The prefix is skipped without copying the text.
+   *
+   * @param pText
+   *          the text
+   * @return this record
+   */
+  public ConsoleRecord setText(String pText)
+  {
+    ConsoleLevel lLevel = ConsoleLevel.INFO;
+    int lStart = 0;
+
+    if (pText.startsWith("[INFO]"))
+      lStart = 6;
+    else if (pText.startsWith("[WARN]"))
+    {
+      lLevel = ConsoleLevel.WARN;
+      lStart = 6;
+    }
+
+    if (lStart > 0 && pText.length() > lStart
+        && pText.charAt(lStart) == ' ')
+      lStart++;
+
+    set(lLevel, null, pText);
+    mMessageStart = lStart;
+    return this;
+  }
+
+  /**
+   * Clears the references held by this record.
+   */
+  public void reset()
+  {
+    mLevel = ConsoleLevel.INFO;
+    mTimestamp = 0;
+    mThread = null;
+    mSource = null;
+    mMessage = "";
+    mMessageStart = 0;
+    mColor = ConsoleLine.cNoColor;
+  }
+
+  /**
+   * Gets the level.
+   *
+   * @return the level
+   */
+  public ConsoleLevel getLevel()
+  {
+    return mLevel;
+  }
+
+  /**
+   * Sets the level.
+   *
+   * @param pLevel
+   *          the level
+   */
+  public void setLevel(ConsoleLevel pLevel)
+  {
+    mLevel = pLevel;
+  }
+
+  /**
+   * Gets the timestamp.
+   *
+   * @return the nanoseconds since the epoch
+   */
+  public long getTimestamp()
+  {
+    return mTimestamp;
+  }
+
+  /**
+   * Sets the timestamp.
+   *
+   * @param pTimestamp
+   *          the nanoseconds since the epoch
+   */
+  public void setTimestamp(long pTimestamp)
+  {
+    mTimestamp = pTimestamp;
+  }
+
+  /**
+   * Gets the name of the thread that logged the record.
+   *
+   * @return the thread name
+   */
+  public String getThread()
+  {
+    return mThread;
+  }
+
+  /**
+   * Sets the name of the thread that logged the record.
+   *
+   * @param pThread
+   *          the thread name
+   */
+  public void setThread(String pThread)
+  {
+    mThread = pThread;
+  }
+
+  /**
+   * Gets the source.
+   *
+   * @return the source, or null
+   */
+  public String getSource()
+  {
+    return mSource;
+  }
+
+  /**
+   * Sets the source, e.g. the name of the node that logged the record.
+   *
+   * @param pSource
+   *          the source, or null
+   */
+  public void setSource(String pSource)
+  {
+    mSource = pSource;
+  }
+
+  /**
+   * Gets the message.
+   *
+   * @return the message
+   */
+  public String getMessage()
+  {
+    return mMessageStart == 0 ? mMessage
+                              : mMessage.substring(mMessageStart);
+  }
+
+  /**
+   * Sets the message.
+   *
+   * @param pMessage
+   *          the message
+   */
+  public void setMessage(String pMessage)
+  {
+    mMessage = pMessage;
+    mMessageStart = 0;
+  }
+
+  /**
+   * Gets the RGB color.
+   *
+   * @return the color or {@link ConsoleLine#cNoColor}
+   */
+  public int getColor()
+  {
+    return mColor;
+  }
+
+  /**
+   * Sets the RGB color.
+   *
+   * @param pColor
+   *          the color or {@link ConsoleLine#cNoColor}
+   */
+  public void setColor(int pColor)
+  {
+    mColor = pColor;
+  }
+
+  /**
+   * Gets the number of lines of the message.
+   *
+   * @return the line count
+   */
+  public int getLineCount()
+  {
+    int lCount = 0;
+    int lStart = mMessageStart;
+    while (lStart < mMessage.length())
+    {
+      lCount++;
+      int lEnd = mMessage.indexOf('\n', lStart);
+      if (lEnd < 0)
+        break;
+      lStart = lEnd + 1;
+    }
+    return lCount;
+  }
+
+  /**
+   * Gets the number of UTF-8 bytes of the message, line separators included.
+   *
+   * @return the byte count
+   */
+  public int getByteCount()
+  {
+    int lLength = 0;
+    for (int i = mMessageStart; i < mMessage.length(); i++)
+    {
+      char c = mMessage.charAt(i);
+      if (c < 0x80)
+        lLength++;
+      else if (c < 0x800)
+        lLength += 2;
+      else if (Character.isHighSurrogate(c))
+      {
+        lLength += 4;
+        i++;
+      }
+      else
+        lLength += 3;
+    }
+    if (!mMessage.endsWith("\n"))
+      lLength++;
+    return lLength;
+  }
+
+  // package-private accessors used by ConsoleLine to split without copying
+
+  String getRawMessage()
+  {
+    return mMessage;
+  }
+
+  int getMessageStart()
+  {
+    return mMessageStart;
+  }
+}
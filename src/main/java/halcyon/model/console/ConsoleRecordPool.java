@@ -0,0 +1,58 @@
+package halcyon.model.console;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of {@link ConsoleRecord}s shared between producer threads and
+ * the console. An array-backed queue is used so that returning a record to
+ * the pool does not allocate; records released while the pool is full are
+ * left to the garbage collector.
+ */
+public class ConsoleRecordPool
+{
+  private final ArrayBlockingQueue<ConsoleRecord> mFree;
+
+  /**
+   * Instantiates a new record pool.
+   *
+   * @param pCapacity
+   *          the maximum number of idle records kept
+   */
+  public ConsoleRecordPool(int pCapacity)
+  {
+    mFree = new ArrayBlockingQueue<>(pCapacity);
+  }
+
+  /**
+   * Takes an idle record, or creates one if none is available.
+   *
+   * @return the record
+   */
+  public ConsoleRecord acquire()
+  {
+    ConsoleRecord lRecord = mFree.poll();
+    return lRecord != null ? lRecord : new ConsoleRecord();
+  }
+
+  /**
+   * Returns a record to the pool. The record must not be used afterwards.
+   *
+   * @param pRecord
+   *          the record
+   */
+  public void release(ConsoleRecord pRecord)
+  {
+    pRecord.reset();
+    mFree.offer(pRecord);
+  }
+
+  /**
+   * Gets the number of idle records.
+   *
+   * @return the number of idle records
+   */
+  public int getIdleCount()
+  {
+    return mFree.size();
+  }
+}
@@ -0,0 +1,106 @@
+package halcyon.model.console;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Releases memory mappings and the files behind them. A mapping otherwise
+ * lives until its buffer is garbage collected, and on Windows a mapped file
+ * cannot be deleted, so the mapping is released explicitly through the
+ * buffer's cleaner. The buffer must not be accessed afterwards.
+ */
+final class MappedBuffers
+{
+  private static final int cDeleteAttempts = 3;
+
+  private static final long cDeleteRetryNanos =
+                                               TimeUnit.MILLISECONDS.toNanos(5);
+
+  /** Unsafe.invokeCleaner on Java 9 and later, null on Java 8 */
+  private static final Method cInvokeCleaner;
+  private static final Object cUnsafe;
+
+  static
+  {
+    Method lInvokeCleaner = null;
+    Object lUnsafe = null;
+    try
+    {
+      Class<?> lUnsafeClass = Class.forName("sun.misc.Unsafe");
+      lInvokeCleaner = lUnsafeClass.getMethod("invokeCleaner",
+                                              ByteBuffer.class);
+      Field lField = lUnsafeClass.getDeclaredField("theUnsafe");
+      lField.setAccessible(true);
+      lUnsafe = lField.get(null);
+    }
+    catch (ReflectiveOperationException | RuntimeException e)
+    {
+      lInvokeCleaner = null;
+    }
+    cInvokeCleaner = lInvokeCleaner;
+    cUnsafe = lUnsafe;
+  }
+
+  private MappedBuffers()
+  {
+  }
+
+  /**
+   * Releases a mapping.
+   *
+   * @param pBuffer
+   *          the mapped buffer, may be null
+   * @return true if the mapping was released, false if it is left to the
+   *         garbage collector
+   */
+  static boolean unmap(MappedByteBuffer pBuffer)
+  {
+    if (pBuffer == null)
+      return true;
+    try
+    {
+      if (cInvokeCleaner != null)
+      {
+        cInvokeCleaner.invoke(cUnsafe, pBuffer);
+        return true;
+      }
+
+      // Java 8: sun.nio.ch.DirectBuffer.cleaner().clean()
+      Method lCleanerMethod = pBuffer.getClass().getMethod("cleaner");
+      lCleanerMethod.setAccessible(true);
+      Object lCleaner = lCleanerMethod.invoke(pBuffer);
+      if (lCleaner == null)
+        return false;
+      lCleaner.getClass().getMethod("clean").invoke(lCleaner);
+      return true;
+    }
+    catch (ReflectiveOperationException | RuntimeException e)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * Deletes a file, retrying briefly while another process, e.g. a virus
+   * scanner, still holds it open.
+   *
+   * @param pFile
+   *          the file
+   * @return true if the file does not exist anymore
+   */
+  static boolean delete(File pFile)
+  {
+    for (int i = 0; i < cDeleteAttempts; i++)
+    {
+      if (pFile.delete() || !pFile.exists())
+        return true;
+      LockSupport.parkNanos(cDeleteRetryNanos);
+    }
+    return false;
+  }
+}
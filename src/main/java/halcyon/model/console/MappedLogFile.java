@@ -0,0 +1,560 @@
+package halcyon.model.console;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Read-only, line-addressed view of a growing log file. The file is
+ * memory-mapped in regions and only the byte ranges that are indexed are ever
+ * read: the first {@link #update(int)} indexes the last bytes of the file,
+ * later ones what was appended since, and {@link #loadEarlier(int)} extends
+ * the index towards the beginning on demand.
+ * <p>
+ * Scanning for line ends is done without holding the lock taken by the
+ * readers; only publishing the scanned lines into the index does. Updates and
+ * loads are meant for a background thread, {@link #get(int)} and the
+ * accessors for the JavaFX application thread, which is then never held up by
+ * a scan. Callers needing several values at once, e.g. {@link #size()} and
+ * {@link #getPrependedLines()}, synchronize on the file.
+ * <p>
+ * The index holds the start offset of every line, grouped in chunks with
+ * offsets relative to the chunk base, i.e. four bytes per indexed line. Lines
+ * are decoded as UTF-8 when read.
+ * <p>
+ * Rotation (the path now names another file) and truncation are detected by
+ * {@link #update(int)}; the caller then reopens the file with
+ * {@link #reopen()}. Closing the file releases its mappings right away.
+ */
+public class MappedLogFile implements Closeable
+{
+  /** returned by {@link #update(int)} when the file was rotated or truncated */
+  public static final int cRotated = -1;
+
+  /** default number of bytes indexed from the end of the file when opened */
+  public static final int cDefaultInitialTailBytes = 16 * 1024 * 1024;
+
+  /** lines longer than this are cut when read */
+  public static final int cMaxLineBytes = 64 * 1024;
+
+  private static final int cRegionShift = 28;
+  private static final long cRegionSize = 1L << cRegionShift;
+
+  private static final int cChunkSpan = 1 << 24;
+
+  private final Path mPath;
+  private final int mInitialTailBytes;
+
+  private FileChannel mChannel;
+  private Object mFileKey;
+  private long mFileSize;
+  private boolean mRotated;
+
+  private final HashMap<Long, MappedByteBuffer> mRegions = new HashMap<>();
+
+  /**
+   * Held while scanning, then while publishing together with the lock of this
+   * object, never by readers alone. Fields only used for scanning are guarded
+   * by it; fields read by readers are modified under both locks.
+   */
+  private final Object mScanLock = new Object();
+
+  /** chunks in file order */
+  private final ArrayList<Chunk> mChunks = new ArrayList<>();
+
+  /** index of the first line of each chunk, null when to be rebuilt */
+  private int[] mChunkFirstLines;
+
+  private int mSize;
+
+  /** number of lines added at the beginning of the index since opened */
+  private long mPrependedLines;
+
+  /** offset of the first indexed line */
+  private long mStartOffset;
+
+  /** offset following the last indexed line */
+  private long mEndOffset;
+
+  /** offset up to which bytes were scanned for line ends */
+  private long mScanOffset;
+
+  private byte[] mLineBytes = new byte[256];
+
+  /**
+   * Opens a log file; its last bytes are indexed by the first
+   * {@link #update(int)}.
+   *
+   * @param pPath
+   *          the path of the file
+   * @throws IOException
+   *           if the file cannot be opened
+   */
+  public MappedLogFile(Path pPath) throws IOException
+  {
+    this(pPath, cDefaultInitialTailBytes);
+  }
+
+  /**
+   * Opens a log file; its last bytes are indexed by the first
+   * {@link #update(int)}.
+   *
+   * @param pPath
+   *          the path of the file
+   * @param pInitialTailBytes
+   *          the number of bytes indexed from the end of the file
+   * @throws IOException
+   *           if the file cannot be opened
+   */
+  public MappedLogFile(Path pPath, int pInitialTailBytes) throws IOException
+  {
+    mPath = pPath;
+    mInitialTailBytes = pInitialTailBytes;
+    open();
+  }
+
+  /**
+   * Gets the path of the file.
+   *
+   * @return the path
+   */
+  public Path getPath()
+  {
+    return mPath;
+  }
+
+  /**
+   * Gets the number of indexed lines.
+   *
+   * @return the number of lines
+   */
+  public synchronized int size()
+  {
+    return mSize;
+  }
+
+  /**
+   * Gets the number of lines added at the beginning of the index by
+   * {@link #loadEarlier(int)} since the file was opened or reopened.
+   *
+   * @return the number of lines
+   */
+  public synchronized long getPrependedLines()
+  {
+    return mPrependedLines;
+  }
+
+  /**
+   * Gets the offset of the first indexed line.
+   *
+   * @return the offset, 0 once the whole file is indexed
+   */
+  public synchronized long getStartOffset()
+  {
+    return mStartOffset;
+  }
+
+  /**
+   * Gets the size of the file when last checked.
+   *
+   * @return the size in bytes
+   */
+  public synchronized long getFileSize()
+  {
+    return mFileSize;
+  }
+
+  /**
+   * Reads an indexed line.
+   *
+   * @param pIndex
+   *          the line index, 0 being the first indexed line
+   * @return the line, or null once the file is closed
+   */
+  public synchronized ConsoleLine get(int pIndex)
+  {
+    if (mChannel == null)
+      return null;
+    if (pIndex < 0 || pIndex >= mSize)
+      throw new IndexOutOfBoundsException("Index: " + pIndex
+                                          + ", Size: "
+                                          + mSize);
+
+    final int lChunkIndex = chunkOf(pIndex);
+    final Chunk lChunk = mChunks.get(lChunkIndex);
+    final int k = pIndex - mChunkFirstLines[lChunkIndex];
+
+    final long lStart = lChunk.mBase + lChunk.mOffsets[k];
+    long lEnd = (k + 1 < lChunk.mCount ? lChunk.mBase
+                                         + lChunk.mOffsets[k + 1]
+                                       : lChunk.mEnd)
+                - 1;
+    if (lEnd > lStart && byteAt(lEnd - 1) == '\r')
+      lEnd--;
+
+    final int lLength = (int) Math.min(lEnd - lStart, cMaxLineBytes);
+    if (mLineBytes.length < lLength)
+      mLineBytes = new byte[Math.max(lLength, 2 * mLineBytes.length)];
+    read(lStart, mLineBytes, lLength);
+
+    final String lText = new String(mLineBytes,
+                                    0,
+                                    lLength,
+                                    StandardCharsets.UTF_8);
+    return new ConsoleLine(guessLevel(lText), lText);
+  }
+
+  /**
+   * Indexes the lines appended to the file since the last call.
+   *
+   * @param pMaxBytes
+   *          the maximum number of bytes scanned by this call
+   * @return the number of lines added at the end of the index, or
+   *         {@link #cRotated} if the file was rotated or truncated
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  public int update(int pMaxBytes) throws IOException
+  {
+    synchronized (mScanLock)
+    {
+      if (mRotated || mChannel == null)
+        return 0;
+
+      final long lSize;
+      final Object lKey;
+      try
+      {
+        lSize = Files.size(mPath);
+        lKey = fileKey();
+      }
+      catch (NoSuchFileException e)
+      {
+        // between the rename and the creation of a rotated file
+        return 0;
+      }
+
+      if (lSize < mEndOffset || (lKey != null && !lKey.equals(mFileKey)))
+      {
+        mRotated = true;
+        return cRotated;
+      }
+
+      final long lFileSize = mChannel.size();
+      synchronized (this)
+      {
+        mFileSize = lFileSize;
+      }
+
+      final ArrayList<Chunk> lScanned = new ArrayList<>();
+      final long lScanEnd = Math.min(lFileSize, mScanOffset + pMaxBytes);
+      final long lLineStart = scan(lScanned, mEndOffset, mScanOffset, lScanEnd);
+      mScanOffset = lScanEnd;
+      mEndOffset = lLineStart;
+
+      synchronized (this)
+      {
+        return append(lScanned);
+      }
+    }
+  }
+
+  /**
+   * Extends the index towards the beginning of the file.
+   *
+   * @param pMaxBytes
+   *          the number of bytes to index before the first indexed line
+   * @return the number of lines added at the beginning of the index
+   */
+  public int loadEarlier(int pMaxBytes)
+  {
+    synchronized (mScanLock)
+    {
+      if (mStartOffset == 0 || mRotated || mChannel == null)
+        return 0;
+
+      long lFrom;
+      long lMaxBytes = pMaxBytes;
+      do
+      {
+        // a line longer than the range moves the start back further
+        lFrom = lineStartAtOrAfter(Math.max(0, mStartOffset - lMaxBytes));
+        lMaxBytes *= 2;
+      }
+      while (lFrom == mStartOffset);
+
+      // index the range on its own, then put its chunks in front
+      final ArrayList<Chunk> lScanned = new ArrayList<>();
+      scan(lScanned, lFrom, lFrom, mStartOffset);
+      int lAdded = 0;
+      for (Chunk lChunk : lScanned)
+        lAdded += lChunk.mCount;
+
+      synchronized (this)
+      {
+        mChunks.addAll(0, lScanned);
+        mSize += lAdded;
+        mPrependedLines += lAdded;
+        mChunkFirstLines = null;
+        mStartOffset = lFrom;
+      }
+      return lAdded;
+    }
+  }
+
+  /**
+   * Reopens the file after a rotation or truncation, emptying the index. The
+   * last bytes of the new file are indexed by the next {@link #update(int)}.
+   *
+   * @throws IOException
+   *           if the file cannot be opened
+   */
+  public void reopen() throws IOException
+  {
+    synchronized (mScanLock)
+    {
+      synchronized (this)
+      {
+        close();
+        mChunks.clear();
+        mChunkFirstLines = null;
+        mSize = 0;
+        mPrependedLines = 0;
+        mRotated = false;
+        open();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    synchronized (mScanLock)
+    {
+      synchronized (this)
+      {
+        // neither a read nor a scan uses a buffer while unmapping
+        for (MappedByteBuffer lRegion : mRegions.values())
+          MappedBuffers.unmap(lRegion);
+        mRegions.clear();
+        if (mChannel != null)
+          mChannel.close();
+        mChannel = null;
+      }
+    }
+  }
+
+  private void open() throws IOException
+  {
+    mChannel = FileChannel.open(mPath, StandardOpenOption.READ);
+    mFileKey = fileKey();
+    mFileSize = mChannel.size();
+
+    mStartOffset = lineStartAtOrAfter(Math.max(0, mFileSize
+                                                  - mInitialTailBytes));
+    mEndOffset = mStartOffset;
+    mScanOffset = mStartOffset;
+  }
+
+  private Object fileKey() throws IOException
+  {
+    return Files.readAttributes(mPath, BasicFileAttributes.class)
+                .fileKey();
+  }
+
+  /**
+   * Scans bytes for line ends, adding every complete line to the given chunks.
+   * Only holds the lock of this object while looking up a region.
+   *
+   * @return the start of the trailing incomplete line
+   */
+  private long scan(ArrayList<Chunk> pChunks,
+                    long pLineStart,
+                    long pFrom,
+                    long pTo)
+  {
+    long lLineStart = pLineStart;
+    long lOffset = pFrom;
+    while (lOffset < pTo)
+    {
+      final ByteBuffer lRegion = region(lOffset);
+      final long lRegionStart = lOffset & ~(cRegionSize - 1);
+      final int lLimit = (int) Math.min(lRegion.limit(),
+                                        pTo - lRegionStart);
+      for (int i = (int) (lOffset - lRegionStart); i < lLimit; i++)
+      {
+        if (lRegion.get(i) == '\n')
+        {
+          final long lLineEnd = lRegionStart + i + 1;
+          addLine(pChunks, lLineStart, lLineEnd);
+          lLineStart = lLineEnd;
+        }
+      }
+      lOffset = lRegionStart + lLimit;
+    }
+    return lLineStart;
+  }
+
+  private static void addLine(ArrayList<Chunk> pChunks,
+                              long pStart,
+                              long pEnd)
+  {
+    Chunk lChunk = pChunks.isEmpty() ? null
+                                     : pChunks.get(pChunks.size() - 1);
+    if (lChunk == null || pStart - lChunk.mBase >= cChunkSpan)
+    {
+      lChunk = new Chunk(pStart);
+      pChunks.add(lChunk);
+    }
+    lChunk.add((int) (pStart - lChunk.mBase), pEnd);
+  }
+
+  /**
+   * Publishes scanned lines at the end of the index, filling up its last
+   * chunk first.
+   *
+   * @return the number of lines added
+   */
+  private int append(ArrayList<Chunk> pScanned)
+  {
+    final int lChunks = mChunks.size();
+    int lAdded = 0;
+    for (Chunk lChunk : pScanned)
+    {
+      for (int k = 0; k < lChunk.mCount; k++)
+        addLine(mChunks,
+                lChunk.mBase + lChunk.mOffsets[k],
+                k + 1 < lChunk.mCount ? lChunk.mBase
+                                        + lChunk.mOffsets[k + 1]
+                                      : lChunk.mEnd);
+      lAdded += lChunk.mCount;
+    }
+    if (mChunks.size() != lChunks)
+      mChunkFirstLines = null;
+    mSize += lAdded;
+    return lAdded;
+  }
+
+  private int chunkOf(int pLine)
+  {
+    if (mChunkFirstLines == null)
+    {
+      mChunkFirstLines = new int[mChunks.size()];
+      int lLine = 0;
+      for (int i = 0; i < mChunks.size(); i++)
+      {
+        mChunkFirstLines[i] = lLine;
+        lLine += mChunks.get(i).mCount;
+      }
+    }
+    int lChunk = Arrays.binarySearch(mChunkFirstLines, pLine);
+    if (lChunk < 0)
+      lChunk = -lChunk - 2;
+    // skip empty chunks sharing the same first line
+    while (lChunk + 1 < mChunkFirstLines.length
+           && mChunkFirstLines[lChunk + 1] == pLine)
+      lChunk++;
+    return lChunk;
+  }
+
+  private long lineStartAtOrAfter(long pOffset)
+  {
+    if (pOffset == 0)
+      return 0;
+    long lOffset = pOffset;
+    while (lOffset < mFileSize && byteAt(lOffset - 1) != '\n')
+      lOffset++;
+    return lOffset;
+  }
+
+  private byte byteAt(long pOffset)
+  {
+    return region(pOffset).get((int) (pOffset & (cRegionSize - 1)));
+  }
+
+  private void read(long pOffset, byte[] pBytes, int pLength)
+  {
+    int lDone = 0;
+    while (lDone < pLength)
+    {
+      final long lOffset = pOffset + lDone;
+      final ByteBuffer lRegion = region(lOffset).duplicate();
+      final int lStart = (int) (lOffset & (cRegionSize - 1));
+      final int lCount = Math.min(pLength - lDone,
+                                  lRegion.limit() - lStart);
+      lRegion.position(lStart);
+      lRegion.get(pBytes, lDone, lCount);
+      lDone += lCount;
+    }
+  }
+
+  /**
+   * Gets the mapped region holding an offset, mapping it again if the file
+   * grew past the end of its previous mapping.
+   */
+  private synchronized ByteBuffer region(long pOffset)
+  {
+    final long lRegion = pOffset >>> cRegionShift;
+    MappedByteBuffer lBuffer = mRegions.get(lRegion);
+    final long lRegionStart = lRegion << cRegionShift;
+    if (lBuffer == null || lRegionStart + lBuffer.limit() <= pOffset)
+    {
+      try
+      {
+        lBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY,
+                               lRegionStart,
+                               Math.min(cRegionSize,
+                                        mFileSize - lRegionStart));
+      }
+      catch (IOException e)
+      {
+        throw new IllegalStateException(e);
+      }
+      mRegions.put(lRegion, lBuffer);
+    }
+    return lBuffer;
+  }
+
+  private static ConsoleLevel guessLevel(String pText)
+  {
+    final int lEnd = Math.min(pText.length(), 80);
+    final String lHead = pText.substring(0, lEnd);
+    if (lHead.contains("ERROR") || lHead.contains("SEVERE"))
+      return ConsoleLevel.ERROR;
+    if (lHead.contains("WARN"))
+      return ConsoleLevel.WARN;
+    return ConsoleLevel.INFO;
+  }
+
+  private static class Chunk
+  {
+    final long mBase;
+    int[] mOffsets = new int[256];
+    int mCount = 0;
+    long mEnd;
+
+    Chunk(long pBase)
+    {
+      mBase = pBase;
+    }
+
+    void add(int pOffset, long pEnd)
+    {
+      if (mCount == mOffsets.length)
+        mOffsets = Arrays.copyOf(mOffsets, 2 * mCount);
+      mOffsets[mCount++] = pOffset;
+      mEnd = pEnd;
+    }
+  }
+}
@@ -0,0 +1,485 @@
+package halcyon.model.console;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Console line store with three tiers. The newest lines are kept as objects in
+ * a {@link ConsoleLineBuffer} (hot tier). Lines leaving the hot tier are packed
+ * into fixed-size deflate-compressed blocks kept in memory (warm tier). The
+ * oldest warm blocks are written to memory-mapped segment files in a spill
+ * directory (cold tier); once the cold tier holds the maximum number of
+ * segments, the oldest segment and its lines are discarded.
+ * <p>
+ * Lines are addressed by a single index across the tiers, and reads decompress
+ * the containing block on demand, keeping a few recently used blocks decoded.
+ * <p>
+ * Segments are unmapped before their file is deleted, so that deleting works
+ * on Windows too. {@link #close()} removes the segment files and the spill
+ * directory; stores still open when the JVM exits are closed then.
+ */
+public class TieredConsoleLineStore implements ConsoleLineStore
+{
+  /** default number of lines held as objects */
+  public static final int cDefaultHotCapacity = 65536;
+
+  /** default number of lines per compressed block */
+  public static final int cDefaultBlockSize = 4096;
+
+  /** default number of compressed blocks kept in memory */
+  public static final int cDefaultWarmBlocks = 64;
+
+  /** default size of a cold segment file */
+  public static final int cDefaultSegmentSize = 64 * 1024 * 1024;
+
+  /** default number of cold segment files */
+  public static final int cDefaultMaxSegments = 16;
+
+  private static final int cDecodedBlockCacheSize = 8;
+
+  private static final Set<TieredConsoleLineStore> cOpen =
+                                                        ConcurrentHashMap.newKeySet();
+
+  static
+  {
+    Thread lHook = new Thread(() -> {
+      for (TieredConsoleLineStore lStore : cOpen)
+        lStore.deleteSpillFiles();
+    }, "Console scrollback cleanup");
+    Runtime.getRuntime().addShutdownHook(lHook);
+  }
+
+  private final ConsoleLineBuffer mHot;
+
+  /** lines evicted from the hot tier that do not fill a block yet */
+  private final List<ConsoleLine> mStaging;
+
+  /** all blocks, oldest first; the first mColdBlocks ones are on disk */
+  private final ArrayList<Block> mBlocks = new ArrayList<>();
+
+  private int mColdBlocks = 0;
+
+  private final ArrayList<Segment> mSegments = new ArrayList<>();
+
+  /** segment files that could not be deleted yet */
+  private final ArrayList<File> mUndeleted = new ArrayList<>();
+
+  private final int mBlockSize;
+  private final int mWarmBlocks;
+  private final int mSegmentSize;
+  private final int mMaxSegments;
+  private final File mSpillDirectory;
+
+  private int mSegmentCounter = 0;
+
+  private final DecodedBlockCache mDecodedBlocks =
+                                                 new DecodedBlockCache();
+
+  private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+  private final Inflater mInflater = new Inflater();
+  private final ByteArrayOutputStream mBlockBytes =
+                                                  new ByteArrayOutputStream();
+
+  private final Consumer<ConsoleLine> mStage = this::stage;
+
+  /** number of lines evicted during the current addAll call */
+  private int mEvicted;
+
+  /**
+   * Instantiates a new tiered store with default tier sizes.
+   *
+   * @param pSpillDirectory
+   *          the directory holding the cold segment files
+   */
+  public TieredConsoleLineStore(File pSpillDirectory)
+  {
+    this(pSpillDirectory,
+         cDefaultHotCapacity,
+         cDefaultBlockSize,
+         cDefaultWarmBlocks,
+         cDefaultSegmentSize,
+         cDefaultMaxSegments);
+  }
+
+  /**
+   * Instantiates a new tiered store.
+   *
+   * @param pSpillDirectory
+   *          the directory holding the cold segment files
+   * @param pHotCapacity
+   *          the number of lines held as objects
+   * @param pBlockSize
+   *          the number of lines per compressed block
+   * @param pWarmBlocks
+   *          the number of compressed blocks kept in memory
+   * @param pSegmentSize
+   *          the size in bytes of a cold segment file
+   * @param pMaxSegments
+   *          the maximum number of cold segment files
+   */
+  public TieredConsoleLineStore(File pSpillDirectory,
+                                int pHotCapacity,
+                                int pBlockSize,
+                                int pWarmBlocks,
+                                int pSegmentSize,
+                                int pMaxSegments)
+  {
+    mSpillDirectory = pSpillDirectory;
+    mHot = new ConsoleLineBuffer(pHotCapacity);
+    mBlockSize = pBlockSize;
+    mStaging = new ArrayList<>(pBlockSize);
+    mWarmBlocks = pWarmBlocks;
+    mSegmentSize = pSegmentSize;
+    mMaxSegments = pMaxSegments;
+    cOpen.add(this);
+  }
+
+  @Override
+  public int size()
+  {
+    return mBlocks.size() * mBlockSize + mStaging.size() + mHot.size();
+  }
+
+  @Override
+  public ConsoleLine get(int pIndex)
+  {
+    if (pIndex < 0 || pIndex >= size())
+      throw new IndexOutOfBoundsException("Index: " + pIndex
+                                          + ", Size: "
+                                          + size());
+
+    final int lBlock = pIndex / mBlockSize;
+    if (lBlock < mBlocks.size())
+      return decode(mBlocks.get(lBlock)).get(pIndex % mBlockSize);
+
+    pIndex -= mBlocks.size() * mBlockSize;
+    if (pIndex < mStaging.size())
+      return mStaging.get(pIndex);
+
+    return mHot.get(pIndex - mStaging.size());
+  }
+
+  @Override
+  public int addAll(List<ConsoleLine> pLines)
+  {
+    mEvicted = 0;
+
+    // feed the hot tier in slices it can hold so that no line is skipped
+    final int lCapacity = mHot.getCapacity();
+    for (int i = 0; i < pLines.size(); i += lCapacity)
+      mHot.addAll(pLines.subList(i,
+                                 Math.min(pLines.size(), i + lCapacity)),
+                  mStage);
+
+    return mEvicted;
+  }
+
+  @Override
+  public void clear()
+  {
+    mHot.clear();
+    mStaging.clear();
+    mBlocks.clear();
+    mColdBlocks = 0;
+    mDecodedBlocks.clear();
+
+    deleteSegments();
+  }
+
+  /**
+   * Removes all lines, deletes the segment files and the spill directory if it
+   * is left empty. The store must not be used afterwards.
+   */
+  @Override
+  public void close()
+  {
+    clear();
+    deleteSpillFiles();
+    cOpen.remove(this);
+  }
+
+  private void deleteSegments()
+  {
+    retryUndeleted();
+    for (Segment lSegment : mSegments)
+      delete(lSegment);
+    mSegments.clear();
+  }
+
+  private void delete(Segment pSegment)
+  {
+    if (!pSegment.delete())
+      mUndeleted.add(pSegment.mFile);
+  }
+
+  private void retryUndeleted()
+  {
+    mUndeleted.removeIf(MappedBuffers::delete);
+  }
+
+  private void deleteSpillFiles()
+  {
+    File[] lFiles = mSpillDirectory.listFiles((pDirectory,
+                                               pName) -> pName.startsWith("scrollback-")
+                                                         && pName.endsWith(".bin"));
+    if (lFiles != null)
+      for (File lFile : lFiles)
+        if (!MappedBuffers.delete(lFile))
+          lFile.deleteOnExit();
+    // only succeeds if nothing else was put there
+    mSpillDirectory.delete();
+  }
+
+  private void stage(ConsoleLine pLine)
+  {
+    mStaging.add(pLine);
+    if (mStaging.size() < mBlockSize)
+      return;
+
+    mBlocks.add(new Block(compress(mStaging)));
+    mStaging.clear();
+
+    if (mBlocks.size() - mColdBlocks > mWarmBlocks)
+      spill(mBlocks.get(mColdBlocks));
+  }
+
+  private void spill(Block pBlock)
+  {
+    Segment lSegment = mSegments.isEmpty() ? null
+                                           : mSegments.get(mSegments.size()
+                                                           - 1);
+    try
+    {
+      if (lSegment == null
+          || lSegment.mBuffer.remaining() < pBlock.mLength)
+      {
+        if (mSegments.size() == mMaxSegments)
+          dropOldestSegment();
+        lSegment = new Segment(new File(mSpillDirectory,
+                                        "scrollback-" + mSegmentCounter++
+                                                         + ".bin"),
+                               Math.max(mSegmentSize, pBlock.mLength));
+        mSegments.add(lSegment);
+      }
+    }
+    catch (IOException e)
+    {
+      // without a cold tier, the block and everything older is discarded
+      e.printStackTrace();
+      dropOldestBlocks(mColdBlocks + 1);
+      deleteSegments();
+      return;
+    }
+
+    pBlock.mSegment = lSegment;
+    pBlock.mOffset = lSegment.mBuffer.position();
+    lSegment.mBuffer.put(pBlock.mCompressed);
+    lSegment.mBlocks++;
+    pBlock.mCompressed = null;
+    mColdBlocks++;
+  }
+
+  private void dropOldestSegment()
+  {
+    Segment lSegment = mSegments.remove(0);
+    dropOldestBlocks(lSegment.mBlocks);
+    retryUndeleted();
+    delete(lSegment);
+  }
+
+  private void dropOldestBlocks(int pCount)
+  {
+    for (int i = 0; i < pCount; i++)
+      mDecodedBlocks.remove(mBlocks.get(i));
+    mBlocks.subList(0, pCount).clear();
+    mColdBlocks = Math.max(0, mColdBlocks - pCount);
+    mEvicted += pCount * mBlockSize;
+  }
+
+  private byte[] compress(List<ConsoleLine> pLines)
+  {
+    mBlockBytes.reset();
+    mDeflater.reset();
+    try (DataOutputStream lOut =
+                               new DataOutputStream(new DeflaterOutputStream(mBlockBytes,
+                                                                             mDeflater)))
+    {
+      for (ConsoleLine lLine : pLines)
+      {
+        byte[] lText = lLine.getText().getBytes(StandardCharsets.UTF_8);
+        lOut.writeByte(lLine.getLevel().ordinal());
+        lOut.writeInt(lLine.getColor());
+        lOut.writeLong(lLine.getTimestamp());
+        lOut.writeInt(lLine.getRepeatCount());
+        writeName(lOut, lLine.getThread());
+        writeName(lOut, lLine.getSource());
+        lOut.writeInt(lText.length);
+        lOut.write(lText);
+      }
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException(e);
+    }
+    return mBlockBytes.toByteArray();
+  }
+
+  private List<ConsoleLine> decode(Block pBlock)
+  {
+    List<ConsoleLine> lLines = mDecodedBlocks.get(pBlock);
+    if (lLines != null)
+      return lLines;
+
+    byte[] lCompressed = pBlock.mCompressed;
+    if (lCompressed == null)
+    {
+      lCompressed = new byte[pBlock.mLength];
+      ByteBuffer lView = pBlock.mSegment.mBuffer.duplicate();
+      lView.position(pBlock.mOffset);
+      lView.get(lCompressed);
+    }
+
+    final ConsoleLevel[] lLevels = ConsoleLevel.values();
+    final HashMap<String, String> lNames = new HashMap<>();
+    lLines = new ArrayList<>(mBlockSize);
+    mInflater.reset();
+    try (DataInputStream lIn =
+                             new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(lCompressed),
+                                                                         mInflater)))
+    {
+      for (int i = 0; i < mBlockSize; i++)
+      {
+        ConsoleLevel lLevel = lLevels[lIn.readByte()];
+        int lColor = lIn.readInt();
+        long lTimestamp = lIn.readLong();
+        int lRepeatCount = lIn.readInt();
+        String lThread = readName(lIn, lNames);
+        String lSource = readName(lIn, lNames);
+        byte[] lText = new byte[lIn.readInt()];
+        lIn.readFully(lText);
+        ConsoleLine lLine = new ConsoleLine(lLevel,
+                                            new String(lText,
+                                                       StandardCharsets.UTF_8),
+                                            lColor,
+                                            lTimestamp,
+                                            lThread,
+                                            lSource);
+        lLine.addRepeats(lRepeatCount - 1);
+        lLines.add(lLine);
+      }
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException(e);
+    }
+
+    mDecodedBlocks.put(pBlock, lLines);
+    return lLines;
+  }
+
+  private static void writeName(DataOutputStream pOut, String pName) throws IOException
+  {
+    pOut.writeBoolean(pName != null);
+    if (pName != null)
+      pOut.writeUTF(pName);
+  }
+
+  /**
+   * Reads a thread or source name, sharing one instance per distinct name
+   * within a block.
+   */
+  private static String readName(DataInputStream pIn,
+                                 HashMap<String, String> pNames) throws IOException
+  {
+    if (!pIn.readBoolean())
+      return null;
+    String lName = pIn.readUTF();
+    String lShared = pNames.putIfAbsent(lName, lName);
+    return lShared != null ? lShared : lName;
+  }
+
+  private static class DecodedBlockCache
+                                        extends
+                                        LinkedHashMap<Block, List<ConsoleLine>>
+  {
+    private static final long serialVersionUID = 1L;
+
+    DecodedBlockCache()
+    {
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Block, List<ConsoleLine>> eldest)
+    {
+      return size() > cDecodedBlockCacheSize;
+    }
+  }
+
+  private static class Block
+  {
+    /** the compressed lines while warm, null once cold */
+    byte[] mCompressed;
+    final int mLength;
+    Segment mSegment;
+    int mOffset;
+
+    Block(byte[] pCompressed)
+    {
+      mCompressed = pCompressed;
+      mLength = pCompressed.length;
+    }
+  }
+
+  private static class Segment
+  {
+    final File mFile;
+    MappedByteBuffer mBuffer;
+    int mBlocks = 0;
+
+    Segment(File pFile, int pSize) throws IOException
+    {
+      mFile = pFile;
+      pFile.getParentFile().mkdirs();
+      try (RandomAccessFile lFile = new RandomAccessFile(pFile, "rw");
+          FileChannel lChannel = lFile.getChannel())
+      {
+        mBuffer = lChannel.map(FileChannel.MapMode.READ_WRITE, 0, pSize);
+      }
+    }
+
+    /**
+     * Unmaps and deletes the segment.
+     *
+     * @return true if the file was deleted
+     */
+    boolean delete()
+    {
+      // a mapped file cannot be deleted on Windows
+      MappedBuffers.unmap(mBuffer);
+      mBuffer = null;
+      return MappedBuffers.delete(mFile);
+    }
+  }
+}
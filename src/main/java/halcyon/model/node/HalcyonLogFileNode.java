@@ -0,0 +1,189 @@
+package halcyon.model.node;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.Node;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+
+import halcyon.view.console.LogFileView;
+
+/**
+ * Halcyon node following one or more log files, like "tail -f". Each file is
+ * shown in a {@link LogFileView}; several files are shown in tabs. A watcher
+ * thread wakes up on changes in the directories of the files, and at least
+ * every {@link #cPollPeriodMillis} milliseconds for file systems that do not
+ * report changes, to index the appended lines.
+ * <p>
+ * The watcher thread and the file mappings are released by {@link #close()},
+ * which {@link #dispose()} calls when the node is removed from a repository
+ * shown by a {@link halcyon.controller.ViewManager}.
+ */
+public class HalcyonLogFileNode extends HalcyonNodeBase
+                                implements HalcyonNodeInterface
+{
+  /** maximum delay between two checks of the files */
+  public static final long cPollPeriodMillis = 250;
+
+  private final List<Path> mPaths;
+
+  private final List<LogFileView> mViews = new ArrayList<>();
+
+  private Node mPanel;
+
+  private volatile boolean mClosed = false;
+
+  private Thread mWatcher;
+
+  /**
+   * Instantiates a new log file node.
+   *
+   * @param name
+   *          the name
+   * @param type
+   *          the type
+   * @param paths
+   *          the files to follow
+   */
+  public HalcyonLogFileNode(String name,
+                            HalcyonNodeType type,
+                            Path... paths)
+  {
+    super(name, type);
+    mPaths = new ArrayList<>();
+    for (Path lPath : paths)
+      mPaths.add(lPath.toAbsolutePath());
+  }
+
+  /**
+   * Gets the panel, starting to follow the files on the first call. The files
+   * are opened by the watcher thread, not by the calling thread.
+   *
+   * @return the panel
+   */
+  @Override
+  public synchronized Node getPanel()
+  {
+    if (mPanel == null && !mClosed)
+    {
+      for (Path lPath : mPaths)
+        mViews.add(new LogFileView(lPath));
+
+      if (mViews.size() == 1)
+        mPanel = mViews.get(0);
+      else
+      {
+        TabPane lTabPane = new TabPane();
+        for (LogFileView lView : mViews)
+        {
+          Tab lTab = new Tab(lView.getPath().getFileName().toString(),
+                             lView);
+          lTab.setClosable(false);
+          lTabPane.getTabs().add(lTab);
+        }
+        mPanel = lTabPane;
+      }
+
+      mWatcher = new Thread(this::watch, "Log file watcher " + getName());
+      mWatcher.setDaemon(true);
+      mWatcher.start();
+    }
+    return mPanel;
+  }
+
+  /**
+   * Closes the node once it is removed from its repository.
+   */
+  @Override
+  public void dispose()
+  {
+    close();
+  }
+
+  /**
+   * Stops following the files and closes them.
+   */
+  public synchronized void close()
+  {
+    if (mClosed)
+      return;
+    mClosed = true;
+
+    if (mWatcher != null)
+      mWatcher.interrupt();
+
+    for (LogFileView lView : mViews)
+      lView.close();
+  }
+
+  private void watch()
+  {
+    WatchService lWatchService = null;
+    try
+    {
+      lWatchService = FileSystems.getDefault().newWatchService();
+      Set<Path> lDirectories = new HashSet<>();
+      for (Path lPath : mPaths)
+        if (lPath.getParent() != null
+            && lDirectories.add(lPath.getParent()))
+          lPath.getParent()
+               .register(lWatchService,
+                         StandardWatchEventKinds.ENTRY_CREATE,
+                         StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+    catch (IOException e)
+    {
+      // polling alone still follows the files
+      e.printStackTrace();
+    }
+
+    try
+    {
+      while (!mClosed)
+      {
+        // the first poll indexes the tail of the files
+        for (LogFileView lView : mViews)
+          if (!mClosed)
+            lView.poll();
+
+        if (lWatchService == null)
+          Thread.sleep(cPollPeriodMillis);
+        else
+        {
+          WatchKey lKey = lWatchService.poll(cPollPeriodMillis,
+                                             TimeUnit.MILLISECONDS);
+          if (lKey != null)
+          {
+            lKey.pollEvents();
+            lKey.reset();
+          }
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      // closed
+    }
+    finally
+    {
+      try
+      {
+        if (lWatchService != null)
+          lWatchService.close();
+      }
+      catch (IOException e)
+      {
+        e.printStackTrace();
+      }
+    }
+  }
+}
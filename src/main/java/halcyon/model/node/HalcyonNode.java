@@ -1,5 +1,10 @@
 package halcyon.model.node;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.scene.Node;
 
@@ -8,12 +13,22 @@ import halcyon.model.property.NodeProperty;
 /**
  * Halcyon Node presents any kinds of element which contains GUI interfaces. By
  * default, it supports JavaFX Node {@link javafx.scene.Node}
+ * <p>
+ * The panel can also be given as a factory, run on the first
+ * {@link #getPanel()}, so that registering a node costs no panel construction
+ * and memory grows with the opened panels only; see
+ * {@link #wrapLazy(String, HalcyonNodeType, Supplier)}. The factory builds
+ * scene graph nodes, so the first {@link #getPanel()} must be called on the
+ * JavaFX application thread. A two-stage factory lets the
+ * part of the work that needs no scene, e.g. loading data or images, be
+ * {@link #prebuild(Executor) prepared in the background} beforehand.
  */
 public class HalcyonNode extends HalcyonNodeBase
                          implements HalcyonNodeInterface
 {
 
   private NodeProperty panel = null;
+  private volatile PanelFactory<?> panelFactory = null;
   private final ReadOnlyBooleanWrapper existPanel =
                                                   new ReadOnlyBooleanWrapper();
 
@@ -35,6 +50,55 @@ public class HalcyonNode extends HalcyonNodeBase
     return new HalcyonNode(name, type, panel);
   }
 
+  /**
+   * Create a HalcyonNode whose panel is built by a factory the first time it is
+   * needed, on the thread calling {@link #getPanel()}, which must be the
+   * JavaFX application thread.
+   * 
+   * @param name
+   *          the name
+   * @param type
+   *          the type
+   * @param panelFactory
+   *          builds the panel
+   * @return the halcyon node
+   */
+  public static HalcyonNode wrapLazy(final String name,
+                                     final HalcyonNodeType type,
+                                     final Supplier<? extends Node> panelFactory)
+  {
+    return wrapLazy(name, type, () -> null, ignored -> panelFactory.get());
+  }
+
+  /**
+   * Create a HalcyonNode whose panel is built in two stages the first time it
+   * is needed: the preparation, which may run in the background after
+   * {@link #prebuild(Executor)}, then the construction of the panel from the
+   * prepared parts, on the thread calling {@link #getPanel()}, which must be
+   * the JavaFX application thread.
+   * 
+   * @param name
+   *          the name
+   * @param type
+   *          the type
+   * @param prepare
+   *          prepares the parts which are safe to build off the scene
+   * @param panelFactory
+   *          builds the panel from the prepared parts
+   * @param <T>
+   *          the type of the prepared parts
+   * @return the halcyon node
+   */
+  public static <T> HalcyonNode wrapLazy(final String name,
+                                         final HalcyonNodeType type,
+                                         final Supplier<? extends T> prepare,
+                                         final Function<? super T, ? extends Node> panelFactory)
+  {
+    HalcyonNode node = new HalcyonNode(name, type);
+    node.panelFactory = new PanelFactory<T>(prepare, panelFactory);
+    return node;
+  }
+
   /**
    * Instantiates a new Halcyon node.
    */
@@ -94,12 +158,37 @@ public class HalcyonNode extends HalcyonNodeBase
   @Override
   public Node getPanel()
   {
+    buildPanel();
     if (panel == null)
       return null;
 
     return panel.get();
   }
 
+  /**
+   * Starts preparing the panel in the background, if it is built by a
+   * two-stage factory and not prepared nor built yet.
+   * 
+   * @param executor
+   *          runs the preparation
+   */
+  public void prebuild(Executor executor)
+  {
+    PanelFactory<?> factory = panelFactory;
+    if (factory != null)
+      factory.prepare(executor);
+  }
+
+  /**
+   * Tells whether the panel was given or built already.
+   * 
+   * @return false while the panel factory has not run
+   */
+  public boolean isPanelBuilt()
+  {
+    return panelFactory == null;
+  }
+
   /**
    * Gets Panel property {@link halcyon.model.property.NodeProperty}.
    * 
@@ -107,6 +196,7 @@ public class HalcyonNode extends HalcyonNodeBase
    */
   public NodeProperty panelProperty()
   {
+    buildPanel();
     return panel;
   }
 
@@ -118,9 +208,71 @@ public class HalcyonNode extends HalcyonNodeBase
    */
   public void setPanel(Node panel)
   {
+    panelFactory = null;
     if (this.panel == null)
       this.panel = new NodeProperty(null, "Content");
 
     this.panel.set(panel);
   }
+
+  /**
+   * Runs the panel factory, if any, and releases it. The factory builds scene
+   * graph nodes, which belong to the JavaFX application thread.
+   */
+  private void buildPanel()
+  {
+    PanelFactory<?> factory = panelFactory;
+    if (factory == null)
+      return;
+
+    assert Platform.isFxApplicationThread() : "panel of " + getName()
+                                              + " built off the JavaFX application thread";
+
+    Node built = factory.build();
+    synchronized (this)
+    {
+      // the panel may have been built or set concurrently
+      if (panelFactory != factory)
+        return;
+      if (panel == null)
+        panel = new NodeProperty(null, "Content");
+      panel.set(built);
+      panelFactory = null;
+    }
+  }
+
+  /**
+   * Builds a panel in two stages, the first of which may run in the
+   * background.
+   */
+  private static class PanelFactory<T>
+  {
+    private final Supplier<? extends T> prepare;
+    private final Function<? super T, ? extends Node> build;
+    private CompletableFuture<T> prepared;
+    private Node panel;
+
+    PanelFactory(Supplier<? extends T> prepare,
+                 Function<? super T, ? extends Node> build)
+    {
+      this.prepare = prepare;
+      this.build = build;
+    }
+
+    synchronized void prepare(Executor executor)
+    {
+      if (prepared == null)
+        prepared = CompletableFuture.supplyAsync(prepare::get, executor);
+    }
+
+    synchronized Node build()
+    {
+      if (panel == null)
+      {
+        T parts = prepared == null ? prepare.get() : prepared.join();
+        panel = build.apply(parts);
+      }
+      return panel;
+    }
+  }
 }
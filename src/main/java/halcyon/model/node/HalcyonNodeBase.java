@@ -1,20 +1,33 @@
 package halcyon.model.node;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
+import halcyon.model.collection.ListenerList;
+import halcyon.model.collection.Subscription;
+
 /**
- * Halcyon Node Base class
+ * Halcyon Node Base class. Each node gets a unique {@link #getId() ID} when it
+ * is created; nodes are equal only to themselves.
  */
 public abstract class HalcyonNodeBase implements HalcyonNodeInterface
 {
+  private final long id = NodeIds.next();
 
   protected HalcyonNodeType type;
   protected final StringProperty name = new SimpleStringProperty();
+  /** the strongly registered observers */
   protected final List<HalcyonNodeListener> listeners =
-                                                      new ArrayList<HalcyonNodeListener>();
+                                                      new CopyOnWriteArrayList<HalcyonNodeListener>();
+  /** the weakly registered observers */
+  private final ListenerList<HalcyonNodeListener> weakListeners =
+                                                                new ListenerList<>();
+  protected final Map<String, String> tags = new ConcurrentHashMap<>();
 
   public HalcyonNodeBase()
   {
@@ -38,6 +51,12 @@ public abstract class HalcyonNodeBase implements HalcyonNodeInterface
     return name.getValue().toString();
   }
 
+  @Override
+  public long getId()
+  {
+    return id;
+  }
+
   @Override
   public boolean equals(Object obj)
   {
@@ -45,13 +64,13 @@ public abstract class HalcyonNodeBase implements HalcyonNodeInterface
     {
       return false;
     }
-    return this.name.getValue() == ((HalcyonNodeBase) obj).getName();
+    return this.id == ((HalcyonNodeBase) obj).id;
   }
 
   @Override
   public int hashCode()
   {
-    return this.name.getValue().hashCode();
+    return Long.hashCode(id);
   }
 
   /**
@@ -60,24 +79,109 @@ public abstract class HalcyonNodeBase implements HalcyonNodeInterface
    * @param listener
    *          the new observer
    */
+  @Override
   public void addListener(HalcyonNodeListener listener)
   {
     listeners.add(listener);
   }
 
+  /**
+   * Adds an observer to this Halcyon node and returns a handle removing it.
+   * 
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  @Override
+  public Subscription subscribe(HalcyonNodeListener listener)
+  {
+    listeners.add(listener);
+    return new Subscription()
+    {
+      private volatile boolean closed = false;
+
+      @Override
+      public void close()
+      {
+        if (closed)
+          return;
+        closed = true;
+        listeners.remove(listener);
+      }
+
+      @Override
+      public boolean isActive()
+      {
+        return !closed && listeners.contains(listener);
+      }
+    };
+  }
+
+  /**
+   * Adds an observer to this Halcyon node that is removed once no longer
+   * referenced elsewhere.
+   * 
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  @Override
+  public Subscription addWeakListener(HalcyonNodeListener listener)
+  {
+    return weakListeners.addWeak(listener);
+  }
+
   /**
    * Removes an observer from this Halcyon node.
    * 
    * @param listener
    *          the listener to remove
    */
+  @Override
   public void removeListener(HalcyonNodeListener listener)
   {
-    listeners.remove(listener);
+    if (!listeners.remove(listener))
+      weakListeners.remove(listener);
   }
 
   public String getName()
   {
     return name.getValue();
   }
+
+  @Override
+  public Map<String, String> getTags()
+  {
+    return Collections.unmodifiableMap(tags);
+  }
+
+  /**
+   * Sets a tag of this Halcyon node. A node already added to a repository must
+   * be {@link halcyon.model.collection.HalcyonNodeRepository#retag retagged}
+   * for its queries to see the change.
+   * 
+   * @param key
+   *          the tag key
+   * @param value
+   *          the value, <code>null</code> to remove the tag
+   * @return this node
+   */
+  public HalcyonNodeBase setTag(String key, String value)
+  {
+    if (value == null)
+      tags.remove(key);
+    else
+      tags.put(key, value);
+    return this;
+  }
+
+  /**
+   * Informs the observers that this Halcyon node has changed.
+   */
+  protected void fireNodeChanged()
+  {
+    for (HalcyonNodeListener listener : listeners)
+      listener.nodeChanged();
+    weakListeners.forEach(HalcyonNodeListener::nodeChanged);
+  }
 }
@@ -1,16 +1,73 @@
 package halcyon.model.node;
 
+import java.util.Collections;
+import java.util.Map;
 import javafx.scene.Node;
 
+import halcyon.model.collection.Subscription;
+
 /**
  * Halcyon Node Interface
  */
 public interface HalcyonNodeInterface
 {
+  /** tag key of the class of the device, e.g. "camera" or "laser" */
+  public static final String cDeviceClassTag = "deviceClass";
+
+  /** tag key of the hardware identifier of the device */
+  public static final String cHardwareIdTag = "hardwareId";
+
+  /** tag key of the channel the node belongs to */
+  public static final String cChannelTag = "channel";
+
   public HalcyonNodeType getType();
 
+  /**
+   * Gets the name of this node. It must not change while the node is in a
+   * {@link halcyon.model.collection.HalcyonNodeRepository}, which indexes it.
+   * 
+   * @return the name
+   */
   public String getName();
 
+  /**
+   * Gets the identifier of this node, unique within the application and
+   * stable for its whole life, unlike its name.
+   * <p>
+   * The default implementation assigns the ID on first request and finds it
+   * again by identity, which takes a lock; nodes queried often, such as the
+   * ones deriving from {@link HalcyonNodeBase}, hold their own.
+   * 
+   * @return the ID, a positive number
+   */
+  public default long getId()
+  {
+    return NodeIds.of(this);
+  }
+
+  /**
+   * Gets the tags of this node, attributes indexed by the
+   * {@link halcyon.model.collection.HalcyonNodeRepository}.
+   * 
+   * @return the tag values by key
+   */
+  public default Map<String, String> getTags()
+  {
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Gets a tag of this node.
+   * 
+   * @param key
+   *          the tag key
+   * @return the value or <code>null</code>
+   */
+  public default String getTag(String key)
+  {
+    return getTags().get(key);
+  }
+
   /**
    * Adds an observer to this Halcyon node.
    * 
@@ -19,6 +76,56 @@ public interface HalcyonNodeInterface
    */
   public void addListener(HalcyonNodeListener listener);
 
+  /**
+   * Adds an observer to this Halcyon node and returns a handle removing it.
+   * The default implementation relies on {@link #addListener} and
+   * {@link #removeListener}.
+   * 
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  public default Subscription subscribe(HalcyonNodeListener listener)
+  {
+    addListener(listener);
+    return new Subscription()
+    {
+      private volatile boolean closed = false;
+
+      @Override
+      public void close()
+      {
+        if (closed)
+          return;
+        closed = true;
+        removeListener(listener);
+      }
+
+      @Override
+      public boolean isActive()
+      {
+        return !closed;
+      }
+    };
+  }
+
+  /**
+   * Adds an observer to this Halcyon node that is removed once no longer
+   * referenced elsewhere. The default implementation registers a forwarding
+   * listener, which removes itself on the first notification after the
+   * observer was garbage collected.
+   * 
+   * @param listener
+   *          the new observer
+   * @return the subscription, closing it removes the observer
+   */
+  public default Subscription addWeakListener(HalcyonNodeListener listener)
+  {
+    WeakNodeListener weak = new WeakNodeListener(this, listener);
+    addListener(weak);
+    return weak;
+  }
+
   /**
    * Removes an observer from this Halcyon node.
    * 
@@ -33,4 +140,14 @@ public interface HalcyonNodeInterface
    * @return the JavaFX panel
    */
   public Node getPanel();
+
+  /**
+   * Releases the resources held by this node, e.g. threads or open files. The
+   * {@link halcyon.controller.ViewManager} calls it once the node is removed
+   * from the repository it shows and the views of the node are closed. The
+   * default implementation does nothing.
+   */
+  public default void dispose()
+  {
+  }
 }
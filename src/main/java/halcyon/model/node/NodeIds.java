@@ -0,0 +1,92 @@
+package halcyon.model.node;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of the node {@link HalcyonNodeInterface#getId() IDs}. Nodes deriving
+ * from {@link HalcyonNodeBase} draw their ID when they are created; other
+ * nodes get one on first request, remembered by identity for as long as the
+ * node is reachable.
+ */
+final class NodeIds
+{
+  private static final AtomicLong cNextId = new AtomicLong();
+
+  /** IDs of the nodes which do not hold their own, guarded by the class */
+  private static final Map<Key, Long> cAssigned = new HashMap<>();
+
+  private static final ReferenceQueue<Object> cCollected =
+                                                         new ReferenceQueue<>();
+
+  private NodeIds()
+  {
+  }
+
+  /**
+   * Draws a new ID.
+   * 
+   * @return the ID, a positive number
+   */
+  static long next()
+  {
+    return cNextId.incrementAndGet();
+  }
+
+  /**
+   * Gets the ID assigned to a node, assigning one on first request.
+   * 
+   * @param node
+   *          the node
+   * @return the ID, a positive number
+   */
+  static synchronized long of(HalcyonNodeInterface node)
+  {
+    Reference<?> collected;
+    while ((collected = cCollected.poll()) != null)
+      cAssigned.remove(collected);
+
+    Long id = cAssigned.get(new Key(node, null));
+    if (id == null)
+    {
+      id = next();
+      cAssigned.put(new Key(node, cCollected), id);
+    }
+    return id;
+  }
+
+  /**
+   * Weak key compared by the identity of its node.
+   */
+  private static class Key extends WeakReference<Object>
+  {
+    private final int hash;
+
+    Key(Object node, ReferenceQueue<Object> queue)
+    {
+      super(node, queue);
+      hash = System.identityHashCode(node);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+      Object node = get();
+      return node != null && node == ((Key) obj).get();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package halcyon.model.node;
+
+import java.lang.ref.WeakReference;
+
+import halcyon.model.collection.Subscription;
+
+/**
+ * Listener registered in place of another one that it references weakly, for
+ * the nodes which do not implement
+ * {@link HalcyonNodeInterface#addWeakListener(HalcyonNodeListener)}
+ * themselves. It unregisters itself on the first notification after its
+ * delegate was garbage collected.
+ */
+class WeakNodeListener implements HalcyonNodeListener, Subscription
+{
+  private final HalcyonNodeInterface node;
+  private final WeakReference<HalcyonNodeListener> delegate;
+  private volatile boolean closed = false;
+
+  WeakNodeListener(HalcyonNodeInterface node, HalcyonNodeListener delegate)
+  {
+    this.node = node;
+    this.delegate = new WeakReference<>(delegate);
+  }
+
+  @Override
+  public void nodeChanged()
+  {
+    HalcyonNodeListener listener = closed ? null : delegate.get();
+    if (listener == null)
+      close();
+    else
+      listener.nodeChanged();
+  }
+
+  @Override
+  public void close()
+  {
+    closed = true;
+    node.removeListener(this);
+  }
+
+  @Override
+  public boolean isActive()
+  {
+    return !closed && delegate.get() != null;
+  }
+}
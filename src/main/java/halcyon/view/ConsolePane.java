@@ -1,230 +1,282 @@
 package halcyon.view;
 
-import halcyon.view.console.TextAppender;
-import javafx.application.Platform;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
-import javafx.concurrent.Task;
-import javafx.concurrent.Worker;
+import halcyon.HalcyonFrame;
+import halcyon.model.console.ConsoleFilter;
+import halcyon.model.console.ConsoleLevel;
+import halcyon.model.console.ConsoleLine;
+import halcyon.model.console.ConsoleRecord;
+import halcyon.model.console.TieredConsoleLineStore;
+import halcyon.view.console.ConsoleIngestion;
+import halcyon.view.console.ConsoleSurface;
+import halcyon.view.console.FilterableConsoleSurface;
+import halcyon.view.console.RecordAppender;
+import halcyon.view.console.VirtualConsoleSurface;
+import halcyon.view.console.WebViewConsoleSurface;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
-import javafx.scene.web.WebEngine;
-import javafx.scene.web.WebView;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.Text;
-
-import java.util.ArrayList;
-import java.util.Collection;
+import javafx.util.Duration;
+
+import java.io.File;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.function.BiConsumer;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * ConsolePane consists of ConsolePanel and a button for clearing the contents
  * of console
  */
-public class ConsolePane extends BorderPane implements TextAppender
+public class ConsolePane extends BorderPane implements RecordAppender
 {
-	private static final long cCheckPeriod = 1_000_000_000;
-	private volatile long mLastCheck = System.nanoTime();
+	/**
+	 * Rendering mode of the console
+	 */
+	public enum Mode
+	{
+		/**
+		 * one DOM element per line in a WebView, keeps the last 4096 lines; the
+		 * WebView is created when the console is first laid out
+		 */
+		WebView,
+		/** virtualized rows over a ring buffer of lines */
+		Virtualized,
+		/**
+		 * virtualized rows over a tiered scrollback: recent lines in memory,
+		 * older lines compressed, oldest lines in memory-mapped files
+		 */
+		Tiered
+	}
 
-	// It remains more than 1024 lines at some point
-	private static final int maxItems = 4096;
-	private final ConcurrentLinkedQueue< String > queue = new ConcurrentLinkedQueue<>();
-	private final List< ConsoleOutputEntry > entries = new ArrayList< ConsoleOutputEntry >( 1024 );
+	/**
+	 * In WebView mode, created on the first layout pass so that WebKit is only
+	 * initialized once the console is actually shown
+	 */
+	private ConsoleSurface mSurface;
 
-	private WebEngine engine;
+	private final ConsoleIngestion mIngestion;
 
-	public ConsolePane(javafx.scene.Node helpNode)
+	/** refreshes the status strip while the console is in a scene and visible */
+	private Timeline mStatusRefresh;
+
+	public ConsolePane( javafx.scene.Node helpNode )
 	{
-		WebView web = new WebView();
-		engine = web.getEngine();
-		engine.setUserStyleSheetLocation( getClass().getResource("ConsoleOutput_WebView.css").toString() );
-		engine.getLoadWorker().stateProperty().addListener( new ChangeListener< Worker.State >()
-		{
-			@Override public void changed( ObservableValue< ? extends Worker.State > observable, Worker.State oldValue, Worker.State newValue )
-			{
-				if( newValue == Worker.State.SUCCEEDED )
-				{
-					Task<Void> task = new Task<Void>() {
-						@Override protected Void call() throws Exception {
-							while ( !isCancelled() )
-							{
-								boolean shouldExecuteScript = !queue.isEmpty();
-
-								while ( !queue.isEmpty() )
-								{
-									String str = queue.poll();
-
-									Platform.runLater( () -> {
-										controlSize();
-
-										if ( str.startsWith( "[INFO]" ) )
-											addTextEntry( str.substring( 6 ) );
-										else if ( str.startsWith( "[WARN]" ) )
-											addErrorEntry( str.substring( 6 ) );
-										else
-											addTextEntry( str );
-									} );
-								}
-
-								if ( shouldExecuteScript )
-								{
-									Platform.runLater( () -> {
-										engine.executeScript( "window.scrollTo(0, document.body.scrollHeight);" );
-									} );
-								}
-
-								Thread.sleep( 500 );
-							}
-							return null;
-						}
-					};
-
-					Thread th = new Thread(task);
-					th.setDaemon(true);
-					th.start();
-				}
-			}
-		} );
-		engine.loadContent( "<html><head><meta http-equiv=\"content-type\" content=\"text/html; charset=UTF-8\"></head><body><pre></pre></body></html>" );
+		this( helpNode, Mode.WebView );
+	}
+
+	public ConsolePane( javafx.scene.Node helpNode, Mode mode )
+	{
+		mIngestion = new ConsoleIngestion( this::applyBatch );
+		mIngestion.setRepeatListener( line -> mSurface.refresh( line ) );
 
-		web.prefWidthProperty().bind(super.widthProperty());
-		web.maxHeightProperty().bind(super.heightProperty());
-		web.setFocusTraversable( false );
+		if ( mode == Mode.Virtualized )
+		{
+			mSurface = new VirtualConsoleSurface();
+			mIngestion.start();
+		}
+		else if ( mode == Mode.Tiered )
+		{
+			File lSpillDirectory = new File( HalcyonFrame.getUserDataDirectory( null )
+					+ "scrollback" + File.separator
+					+ System.identityHashCode( this ) + "-" + System.currentTimeMillis() );
+			mSurface = new VirtualConsoleSurface( new TieredConsoleLineStore( lSpillDirectory ) );
+			mIngestion.start();
+		}
+		// in WebView mode, lines are held by the ingestion stage until the surface exists
 
 		Button lClearButton = new Button( "Clear" );
 		lClearButton.setOnAction( event -> {
 			this.clear();
 		} );
 
+		HBox topHbox = new HBox( 5, lClearButton );
+		topHbox.setAlignment( Pos.CENTER_LEFT );
+
+		if ( mSurface instanceof FilterableConsoleSurface )
+			addFilterControls( topHbox, ( FilterableConsoleSurface ) mSurface );
+
 		if(helpNode != null) {
-			HBox topHbox = new HBox(5, lClearButton, helpNode);
-			topHbox.setAlignment( Pos.CENTER_LEFT );
+			topHbox.getChildren().add( helpNode );
+		}
+
+		if ( topHbox.getChildren().size() > 1 )
 			setTop( topHbox );
-		} else {
+		else
 			setTop( lClearButton );
-		}
-		setCenter( web );
-	}
+		if ( mSurface != null )
+			setCenter( mSurface.getNode() );
 
-	private ConsoleOutputEntry createEntry() {
-		ConsoleOutputEntry entry = new ConsoleOutputEntry();
-		entries.add(entry);
-		return entry;
+		setBottom( createStatusStrip() );
 	}
 
-	private ConsoleOutputEntry createTextEntry(String text, String styleClass, BiConsumer<Element, Text> nodeModifier, Integer colorHex) {
-		ConsoleOutputEntry entry = createEntry();
-
-		Document doc = engine.getDocument();
-		Node body = doc.getElementsByTagName("pre").item(0);
-		Element entryNode = doc.createElement("div");
+	private Label createStatusStrip()
+	{
+		Label lStatus = new Label();
+		lStatus.setStyle( "-fx-font-size: 10px;" );
+		lStatus.setPadding( new Insets( 1, 4, 1, 4 ) );
 
-		Text textNode = doc.createTextNode(text);
+		mStatusRefresh = new Timeline( new KeyFrame( Duration.seconds( 1 ),
+				event -> lStatus.setText( mIngestion.getMetrics().getSummary() ) ) );
+		mStatusRefresh.setCycleCount( Animation.INDEFINITE );
 
-		entryNode.appendChild(textNode);
-		body.appendChild(entryNode);
+		// a playing timeline is held by the master timer, so it must not run
+		// once the console is gone
+		sceneProperty().addListener( ( observable, oldValue, newValue ) -> updateStatusRefresh() );
+		visibleProperty().addListener( ( observable, oldValue, newValue ) -> updateStatusRefresh() );
+		updateStatusRefresh();
 
-		entry.entryNode = entryNode;
-		entry.textNode = textNode;
+		return lStatus;
+	}
 
-		String className = "entry-text";
-		if (styleClass != null) {
-			className += ' ' + styleClass;
-		}
-		entryNode.setAttribute("class", className);
+	private void updateStatusRefresh()
+	{
+		if ( getScene() != null && isVisible() )
+			mStatusRefresh.play();
+		else
+			mStatusRefresh.stop();
+	}
 
-		if (colorHex != null)
+	@Override
+	protected void layoutChildren()
+	{
+		if ( mSurface == null )
 		{
-			entryNode.setAttribute("style", "color: #" + Integer.toHexString(colorHex) );
+			mSurface = new WebViewConsoleSurface( this, mIngestion::start );
+			setCenter( mSurface.getNode() );
 		}
+		super.layoutChildren();
+	}
 
-		if (nodeModifier != null) {
-			nodeModifier.accept(entryNode, textNode);
-		}
+	private void addFilterControls( HBox box, FilterableConsoleSurface surface )
+	{
+		TextField lFilterField = new TextField();
+		lFilterField.setPromptText( "Filter" );
+
+		CheckBox lRegexBox = new CheckBox( "Regex" );
 
-		return entry;
+		ChoiceBox< String > lLevelBox = new ChoiceBox<>( FXCollections.observableArrayList(
+				"All levels", "INFO", "WARN", "ERROR" ) );
+		lLevelBox.getSelectionModel().select( 0 );
+
+		Runnable lUpdate = () -> {
+			lFilterField.setStyle( null );
+
+			EnumSet< ConsoleLevel > lLevels;
+			int lSelected = lLevelBox.getSelectionModel().getSelectedIndex();
+			if ( lSelected <= 0 )
+				lLevels = EnumSet.allOf( ConsoleLevel.class );
+			else
+				lLevels = EnumSet.of( ConsoleLevel.valueOf( lLevelBox.getValue() ) );
+
+			String lText = lFilterField.getText();
+			if ( lText == null || lText.isEmpty() )
+			{
+				surface.setFilter( lSelected <= 0 ? null : ConsoleFilter.levels( lLevels ) );
+			}
+			else if ( lRegexBox.isSelected() )
+			{
+				try
+				{
+					surface.setFilter( ConsoleFilter.regex( lLevels, lText ) );
+				}
+				catch ( PatternSyntaxException e )
+				{
+					// keep the current filter until the expression is valid
+					lFilterField.setStyle( "-fx-text-fill: red;" );
+				}
+			}
+			else
+			{
+				surface.setFilter( ConsoleFilter.substring( lLevels, lText ) );
+			}
+		};
+
+		lFilterField.textProperty().addListener( ( observable, oldValue, newValue ) -> lUpdate.run() );
+		lRegexBox.selectedProperty().addListener( ( observable, oldValue, newValue ) -> lUpdate.run() );
+		lLevelBox.valueProperty().addListener( ( observable, oldValue, newValue ) -> lUpdate.run() );
+
+		box.getChildren().addAll( lFilterField, lRegexBox, lLevelBox );
 	}
 
-	private ConsoleOutputEntry createTextEntry(String text, String styleClass) {
-		return createTextEntry(text, styleClass, null, null);
+	private void applyBatch( List< ConsoleLine > lines )
+	{
+		// follow the tail only if the user has not scrolled back
+		boolean lFollow = mSurface.isAtEnd();
+		mSurface.append( lines );
+		if ( lFollow )
+			mSurface.scrollToEnd();
 	}
 
+	public void addTextEntry(String text, int colorHex) {
+		ConsoleRecord lRecord = mIngestion.obtainRecord().set( ConsoleLevel.INFO, null, text );
+		lRecord.setColor( colorHex );
+		mIngestion.append( lRecord );
+	}
 
-	public ConsoleOutputEntry addTextEntry(String text, int colorHex) {
-		return createTextEntry(text, null, null, colorHex);
+	public void addTextEntry(String text) {
+		mIngestion.append( ConsoleLevel.INFO, null, text );
 	}
 
-	public ConsoleOutputEntry addTextEntry(String text) {
-		return createTextEntry(text, null);
+	public void addErrorEntry(String text) {
+		mIngestion.append( ConsoleLevel.WARN, null, text );
 	}
 
-	public ConsoleOutputEntry addErrorEntry(String text) {
-		return createTextEntry(text, "entry-error");
+	public void addInputEntry(String text) {
+		mIngestion.append( ConsoleLevel.INPUT, null, "> " + text );
 	}
 
-	public ConsoleOutputEntry addInputEntry(String text) {
-		return createTextEntry("> " + text, "entry-input");
+	/**
+	 * Gets the ingestion stage feeding this console, e.g. to choose its
+	 * overflow policy or to read its drop counters.
+	 * @return the ingestion stage
+	 */
+	public ConsoleIngestion getIngestion()
+	{
+		return mIngestion;
 	}
 
 	public void clear()
 	{
-		List<ConsoleOutputEntry> toRemoved = new ArrayList<>( entries.subList( 0, entries.size() ) );
-		entries.removeAll( toRemoved );
-
-		runDeleteTask( toRemoved );
+		mIngestion.clear();
+		if ( mSurface != null )
+			mSurface.clear();
 	}
 
-	private void runDeleteTask( Collection<ConsoleOutputEntry> toRemoved )
+	/**
+	 * Releases the scrollback of the console, deleting its spill files in
+	 * Tiered mode. The console must not be used afterwards.
+	 */
+	public void close()
 	{
-		Document doc = engine.getDocument();
-		Node body = doc.getElementsByTagName( "pre" ).item( 0 );
-
-		for ( ConsoleOutputEntry entry: toRemoved )
-		{
-			body.removeChild( entry.entryNode );
-			entry.dispose();
-		}
+		mStatusRefresh.stop();
+		mIngestion.clear();
+		if ( mSurface != null )
+			mSurface.close();
 	}
 
 	public void appendText( final String str )
 	{
-		queue.add( str );
+		mIngestion.appendText( str );
 	}
 
-	private void controlSize()
+	@Override
+	public ConsoleRecord obtainRecord()
 	{
-		final long lTimeNow = System.nanoTime();
-
-		if (lTimeNow > mLastCheck + cCheckPeriod)
-		{
-			if( entries.size() > maxItems )
-			{
-				List<ConsoleOutputEntry> toRemoved = new ArrayList<>( entries.subList( 0, entries.size() - maxItems ) );
-				entries.removeAll( toRemoved );
-
-				runDeleteTask( toRemoved );
-			}
-
-			mLastCheck = lTimeNow;
-		}
+		return mIngestion.obtainRecord();
 	}
 
-
-	private class ConsoleOutputEntry
+	@Override
+	public void append( ConsoleRecord record )
 	{
-		public Element entryNode;
-		public Text textNode;
-
-		public void dispose()
-		{
-			entryNode = null;
-			textNode = null;
-		}
+		mIngestion.append( record );
 	}
 }
@@ -1,9 +1,11 @@
 package halcyon.view;
 
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javafx.application.Platform;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
@@ -12,19 +14,39 @@ import halcyon.view.console.TextAppender;
 
 /**
  * ConsolePane for Standard Output and Standard Error messages.
+ * <p>
+ * Producers append chunks to a lock-free queue; a single flush per update
+ * period moves all pending chunks into the text area. The text area is kept
+ * bounded by deleting whole chunks from its beginning once it grows past
+ * {@link #cMaxCharactersInTextArea}, down to a lower watermark, so trimming
+ * happens rarely and never requires reading back the document.
  */
 public class ConsolePanel extends ScrollPane implements TextAppender
 {
   private static final int cMaxCharactersInTextArea = 100_000;
+  private static final int cTrimmedCharactersInTextArea = 75_000;
   private static final long cUpdatePeriodInMilliseconds = 200;
 
-  private ReentrantLock mReentrantLock = new ReentrantLock();
-  private StringBuilder mStringBuilder;
+  private final ConcurrentLinkedQueue<String> mChunks =
+                                                      new ConcurrentLinkedQueue<>();
 
-  private long mLastUpdate = System.currentTimeMillis();
+  private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
 
-  private final ScheduledExecutorService mScheduler =
-                                                    Executors.newScheduledThreadPool(1);
+  private volatile long mLastUpdate = 0;
+
+  private static final ScheduledExecutorService cScheduler =
+                                                           Executors.newSingleThreadScheduledExecutor(r -> {
+                                                             Thread lThread =
+                                                                            new Thread(r,
+                                                                                       "ConsolePanel flush");
+                                                             lThread.setDaemon(true);
+                                                             return lThread;
+                                                           });
+
+  // Only accessed from the JavaFX application thread
+  private final StringBuilder mPending = new StringBuilder();
+  private final ArrayDeque<Integer> mChunkLengths = new ArrayDeque<>();
+  private int mLength = 0;
 
   /**
    * The text area.
@@ -41,85 +63,90 @@ public class ConsolePanel extends ScrollPane implements TextAppender
     setContent(mTextArea);
 
     mTextArea.setEditable(false);
-
-    mStringBuilder = new StringBuilder();
-    mStringBuilder.ensureCapacity(cMaxCharactersInTextArea);
-
-    Runnable lRunnable = () -> {
-      try
-      {
-        update();
-      }
-      catch (Throwable e)
-      {
-        e.printStackTrace();
-      }
-    };
-
-    mScheduler.scheduleAtFixedRate(lRunnable,
-                                   0,
-                                   500,
-                                   TimeUnit.MILLISECONDS);
   }
 
   /**
    * Appends text.
-   * 
+   *
    * @param pStringToAppend
    *          the string to append
    */
+  @Override
   public void appendText(final String pStringToAppend)
   {
-    mReentrantLock.lock();
-    try
-    {
-      mStringBuilder.append(pStringToAppend);
-    }
-    finally
-    {
-      mReentrantLock.unlock();
-    }
+    mChunks.add(pStringToAppend);
 
-    if (mLastUpdate
-        + cUpdatePeriodInMilliseconds < System.currentTimeMillis())
+    if (mFlushScheduled.compareAndSet(false, true))
     {
-      update();
+      long lDelay = mLastUpdate + cUpdatePeriodInMilliseconds
+                    - System.currentTimeMillis();
+      if (lDelay <= 0)
+        Platform.runLater(this::flush);
+      else
+        cScheduler.schedule(() -> Platform.runLater(this::flush),
+                            lDelay,
+                            TimeUnit.MILLISECONDS);
     }
   }
 
+  /**
+   * Moves the pending text into the text area on the JavaFX application
+   * thread. May be called from any thread.
+   */
   protected void update()
+  {
+    Platform.runLater(this::flush);
+  }
+
+  // must run on the JavaFX application thread
+  private void flush()
   {
     mLastUpdate = System.currentTimeMillis();
 
-    Platform.runLater(() -> {
+    // cleared before draining: a chunk added from now on schedules a new flush
+    mFlushScheduled.set(false);
 
-      if (mReentrantLock.tryLock())
+    try
+    {
+      String lChunk;
+      while ((lChunk = mChunks.poll()) != null)
+        mPending.append(lChunk);
+
+      if (mPending.length() == 0)
+        return;
+
+      if (mPending.length() > cMaxCharactersInTextArea)
       {
-        try
-        {
-          if (mStringBuilder.length() > 0)
-          {
-            String lString = mStringBuilder.toString();
-            mTextArea.appendText(lString);
-            mStringBuilder.setLength(0);
-
-            int lLength = mTextArea.lengthProperty().get();
-            if (lLength > cMaxCharactersInTextArea)
-            {
-              mTextArea.deleteText(0,
-                                   lLength
-                                      - cMaxCharactersInTextArea);
-              mTextArea.selectPositionCaret(lLength - 1);
-              mTextArea.deselect();
-            }
-          }
-        }
-        finally
-        {
-          mReentrantLock.unlock();
-        }
+        // everything in the text area would be trimmed anyway
+        mPending.delete(0,
+                        mPending.length() - cTrimmedCharactersInTextArea);
+        mTextArea.clear();
+        mChunkLengths.clear();
+        mLength = 0;
       }
-    });
+
+      mTextArea.appendText(mPending.toString());
+      mChunkLengths.add(mPending.length());
+      mLength += mPending.length();
+
+      if (mLength > cMaxCharactersInTextArea)
+      {
+        int lDelete = 0;
+        while (mChunkLengths.size() > 1
+               && mLength - lDelete > cTrimmedCharactersInTextArea)
+          lDelete += mChunkLengths.poll();
+
+        mTextArea.deleteText(0, lDelete);
+        mLength -= lDelete;
+        mTextArea.positionCaret(mLength);
+      }
+    }
+    finally
+    {
+      mPending.setLength(0);
+      if (mPending.capacity() > cMaxCharactersInTextArea)
+        mPending.trimToSize();
+    }
   }
 
   /**
@@ -129,6 +156,8 @@ public class ConsolePanel extends ScrollPane implements TextAppender
   {
     Platform.runLater(() -> {
       mTextArea.clear();
+      mChunkLengths.clear();
+      mLength = 0;
     });
   }
 
@@ -3,6 +3,7 @@ package halcyon.view;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 
+import halcyon.model.collection.Subscription;
 import halcyon.model.node.HalcyonNodeInterface;
 import halcyon.model.node.HalcyonNodeListener;
 
@@ -21,6 +22,9 @@ public class HalcyonPanel extends DockNode
 
   };
 
+  /** weak registration of the listener, expiring with this panel */
+  private Subscription subscription;
+
   /**
    * Instantiates a new Halcyon panel.
    * 
@@ -36,15 +40,12 @@ public class HalcyonPanel extends DockNode
 
     // getDockTitleBar().setVisible( false );
 
-    if (isVisible() && getNode() != null)
-      getNode().removeListener(listener);
-
     this.node = node;
 
     this.setTitle(node == null ? "" : node.getName());
 
     if (isVisible() && node != null)
-      node.addListener(listener);
+      subscription = node.addWeakListener(listener);
   }
 
   /**
@@ -55,8 +56,8 @@ public class HalcyonPanel extends DockNode
    */
   public void setNode(HalcyonNodeInterface node)
   {
-    if (isVisible() && getNode() != null)
-      getNode().removeListener(listener);
+    if (subscription != null)
+      subscription.close();
 
     this.node = node;
 
@@ -65,7 +66,7 @@ public class HalcyonPanel extends DockNode
     this.setTitle(node == null ? "" : node.getName());
 
     if (isVisible() && node != null)
-      node.addListener(listener);
+      subscription = node.addWeakListener(listener);
   }
 
   /**
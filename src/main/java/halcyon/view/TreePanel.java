@@ -4,7 +4,12 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.ObservableList;
@@ -18,10 +23,13 @@ import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.layout.VBox;
 
+import gnu.trove.set.hash.TLongHashSet;
+
 import halcyon.controller.ViewManager;
 import halcyon.demo.DemoHalcyonNodeType;
 import halcyon.model.collection.HalcyonNodeRepository;
-import halcyon.model.collection.HalcyonNodeRepositoryListener;
+import halcyon.model.collection.HalcyonNodeRepositoryChange;
+import halcyon.model.collection.NodePathIndex;
 import halcyon.model.node.HalcyonGroupNode;
 import halcyon.model.node.HalcyonNode;
 import halcyon.model.node.HalcyonNodeInterface;
@@ -37,6 +45,8 @@ public class TreePanel extends DockNode
   private HalcyonNodeRepository nodes;
   final private HashMap<String, TreeItem<TreeNode>> subNodes =
                                                              new HashMap<>();
+  /** items of the paths shown so far, by path */
+  final private HashMap<String, PathItem> pathItems = new HashMap<>();
 
   /**
    * The TreeView.
@@ -109,28 +119,212 @@ public class TreePanel extends DockNode
   {
     this.nodes = nodes;
 
-    this.nodes.addListener(new HalcyonNodeRepositoryListener()
+    this.nodes.addListener(this::nodesChanged);
+  }
+
+  /**
+   * Applies a batch of repository changes with at most one children update per
+   * node type and per loaded path. Nodes with a plain name are listed under
+   * their type; nodes named by a path such as "rig/arm/camera" are shown in a
+   * hierarchy whose levels are only built when expanded.
+   * 
+   * @param change
+   *          the change
+   */
+  private void nodesChanged(HalcyonNodeRepositoryChange change)
+  {
+    Map<String, TLongHashSet> removedIds = new HashMap<>();
+    Map<String, List<TreeItem<TreeNode>>> addedItems =
+                                                     new LinkedHashMap<>();
+    Set<String> dirtyPaths = new HashSet<>();
+
+    for (HalcyonNodeInterface node : change.getRemoved())
     {
-      @Override
-      public void nodeAdded(HalcyonNodeInterface node)
+      if (NodePathIndex.isPath(node.getName()))
+        markDirty(node.getName(), dirtyPaths);
+      else
       {
-        TreeItem<TreeNode> item =
-                                new TreeItem<>(new TreeNode(node.getName(),
-                                                            node));
-        subNodes.get(node.getType().name()).getChildren().add(item);
+        removedIds.computeIfAbsent(node.getType().name(),
+                                   t -> new TLongHashSet())
+                  .add(node.getId());
+        if (pathItems.containsKey(node.getName()))
+          dirtyPaths.add("");
       }
+    }
 
-      @Override
-      public void nodeRemoved(HalcyonNodeInterface node)
+    for (HalcyonNodeInterface node : change.getAdded())
+    {
+      if (NodePathIndex.isPath(node.getName()))
+        markDirty(node.getName(), dirtyPaths);
+      else
       {
-        subNodes.get(node.getType().name())
-                .getChildren()
-                .removeIf(c -> c.getValue()
-                                .getNode()
-                                .getName()
-                                .equals(node.getName()));
+        addedItems.computeIfAbsent(node.getType().name(),
+                                   t -> new ArrayList<>())
+                  .add(new TreeItem<>(new TreeNode(node.getName(), node)));
+        if (pathItems.containsKey(node.getName()))
+          dirtyPaths.add("");
       }
-    });
+    }
+
+    for (Map.Entry<String, TLongHashSet> entry : removedIds.entrySet())
+    {
+      TLongHashSet ids = entry.getValue();
+      subNodes.get(entry.getKey())
+              .getChildren()
+              .removeIf(c -> ids.contains(c.getValue()
+                                              .getNode()
+                                              .getId()));
+    }
+
+    for (Map.Entry<String, List<TreeItem<TreeNode>>> entry : addedItems.entrySet())
+      subNodes.get(entry.getKey()).getChildren().addAll(entry.getValue());
+
+    // parents first, so that dropped subtrees are not synchronized
+    List<String> sortedPaths = new ArrayList<>(dirtyPaths);
+    sortedPaths.sort((a, b) -> Integer.compare(a.length(), b.length()));
+    for (String path : sortedPaths)
+    {
+      if (path.isEmpty())
+        syncTopLevel();
+      else
+      {
+        PathItem item = pathItems.get(path);
+        if (item != null && item.loaded)
+          item.sync();
+      }
+    }
+  }
+
+  /**
+   * Marks the top level and every loaded ancestor of a path for
+   * synchronization.
+   */
+  private void markDirty(String path, Set<String> dirtyPaths)
+  {
+    dirtyPaths.add("");
+    for (String parent = NodePathIndex.getParent(path); !parent.isEmpty(); parent =
+                                                                                  NodePathIndex.getParent(parent))
+    {
+      PathItem item = pathItems.get(parent);
+      if (item != null && item.loaded)
+        dirtyPaths.add(parent);
+    }
+  }
+
+  /**
+   * Shows a top level item for every first path segment having children,
+   * after the type groups.
+   */
+  private void syncTopLevel()
+  {
+    List<TreeItem<TreeNode>> children = new ArrayList<>();
+    for (TreeItem<TreeNode> child : tree.getRoot().getChildren())
+      if (!(child instanceof PathItem))
+        children.add(child);
+
+    Set<String> kept = new HashSet<>();
+    for (NodePathIndex.Child child : nodes.getPathIndex().getChildren(""))
+      if (child.hasChildren())
+      {
+        children.add(pathItem(child));
+        kept.add(child.getPath());
+      }
+
+    for (TreeItem<TreeNode> child : tree.getRoot().getChildren())
+      if (child instanceof PathItem
+          && !kept.contains(((PathItem) child).path))
+        forget((PathItem) child);
+
+    tree.getRoot().getChildren().setAll(children);
+  }
+
+  /**
+   * Gets the item of a path, creating it if needed, updated from the index.
+   */
+  private PathItem pathItem(NodePathIndex.Child child)
+  {
+    PathItem item = pathItems.get(child.getPath());
+    if (item == null)
+    {
+      item = new PathItem(child);
+      pathItems.put(child.getPath(), item);
+    }
+    else
+    {
+      item.getValue().setNode(child.getNode());
+      item.hasChildren = child.hasChildren();
+    }
+    return item;
+  }
+
+  /**
+   * Unregisters the item of a path and its loaded descendants.
+   */
+  private void forget(PathItem item)
+  {
+    pathItems.remove(item.path);
+    if (item.loaded)
+      for (TreeItem<TreeNode> child : item.getLoadedChildren())
+        forget((PathItem) child);
+  }
+
+  /**
+   * Tree item of a path whose children are read from the path index when it
+   * is first expanded.
+   */
+  private class PathItem extends TreeItem<TreeNode>
+  {
+    final String path;
+    boolean hasChildren;
+    boolean loaded = false;
+
+    PathItem(NodePathIndex.Child child)
+    {
+      super(new TreeNode(child.getSegment(), child.getNode()));
+      path = child.getPath();
+      hasChildren = child.hasChildren();
+    }
+
+    @Override
+    public boolean isLeaf()
+    {
+      return !hasChildren;
+    }
+
+    @Override
+    public ObservableList<TreeItem<TreeNode>> getChildren()
+    {
+      if (!loaded)
+      {
+        loaded = true;
+        sync();
+      }
+      return super.getChildren();
+    }
+
+    ObservableList<TreeItem<TreeNode>> getLoadedChildren()
+    {
+      return super.getChildren();
+    }
+
+    void sync()
+    {
+      List<TreeItem<TreeNode>> children = new ArrayList<>();
+      Set<String> kept = new HashSet<>();
+      for (NodePathIndex.Child child : nodes.getPathIndex()
+                                            .getChildren(path))
+      {
+        children.add(pathItem(child));
+        kept.add(child.getPath());
+      }
+
+      for (TreeItem<TreeNode> child : super.getChildren())
+        if (!kept.contains(((PathItem) child).path))
+          forget((PathItem) child);
+
+      hasChildren = !children.isEmpty();
+      super.getChildren().setAll(children);
+    }
   }
 
   /**
@@ -225,6 +419,7 @@ public class TreePanel extends DockNode
                                                                     });
 
                                                                 nodeList.stream()
+                                                                        .filter(Objects::nonNull)
                                                                         .forEach(viewManager::open);
                                                               }
                                                             })
@@ -260,6 +455,7 @@ public class TreePanel extends DockNode
                                                                     });
 
                                                                 nodeList.stream()
+                                                                        .filter(Objects::nonNull)
                                                                         .forEach(viewManager::makeIndependentWindow);
                                                               }
                                                             })
@@ -296,6 +492,7 @@ public class TreePanel extends DockNode
                                                                     });
 
                                                                 nodeList.stream()
+                                                                        .filter(Objects::nonNull)
                                                                         .forEach(viewManager::close);
 
                                                                 HalcyonGroupNode lHalcyonGroupNode =
@@ -340,6 +537,7 @@ public class TreePanel extends DockNode
                                                                     });
 
                                                                 nodeList.stream()
+                                                                        .filter(Objects::nonNull)
                                                                         .forEach(viewManager::close);
 
                                                                 HalcyonGroupNode lHalcyonGroupNode =
@@ -383,6 +581,7 @@ public class TreePanel extends DockNode
                                                                     });
 
                                                                 nodeList.stream()
+                                                                        .filter(Objects::nonNull)
                                                                         .forEach(viewManager::close);
 
                                                                 HalcyonGroupNode lHalcyonGroupNode =
@@ -427,6 +626,7 @@ public class TreePanel extends DockNode
                                                                     });
 
                                                                 nodeList.stream()
+                                                                        .filter(Objects::nonNull)
                                                                         .forEach(viewManager::close);
                                                               }
                                                             })
@@ -441,7 +641,7 @@ public class TreePanel extends DockNode
   public void removeNoChildNode()
   {
     tree.getRoot().getChildren().forEach(c -> {
-      if (c.getChildren().size() == 1) {
+      if (!(c instanceof PathItem) && c.getChildren().size() == 1) {
       	  TreeNode n = c.getChildren().get( 0 ).getValue();
 		  c.getValue().setName( n.getName() );
 		  c.getValue().setNode( n.getNode() );
@@ -0,0 +1,240 @@
+package halcyon.view.console;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stream handing its bytes to a background thread that writes them to
+ * a slower sink in batches. Writers only copy into a bounded ring buffer and
+ * never wait on the sink: when the buffer is full, the bytes that do not fit
+ * are dropped, counted, and reported in the sink by a marker line. Pending
+ * bytes are written at shutdown, within a bounded delay, unless the stream was
+ * closed before.
+ */
+public class AsyncOutputStream extends OutputStream
+{
+  /** default size of the ring buffer */
+  public static final int cDefaultCapacity = 1 << 20;
+
+  /** maximum delay spent writing pending bytes at shutdown */
+  public static final long cShutdownFlushTimeoutMillis = 2000;
+
+  private static final int cBatchSize = 64 * 1024;
+
+  private final OutputStream mSink;
+
+  private final byte[] mBuffer;
+  private final byte[] mBatch = new byte[cBatchSize];
+
+  // guarded by this
+  private int mHead = 0;
+  private int mSize = 0;
+  private boolean mWriting = false;
+  private boolean mClosed = false;
+  private long mDroppedBytes = 0;
+  private long mReportedDroppedBytes = 0;
+
+  private final byte[] mSingle = new byte[1];
+
+  private final Thread mWriter;
+
+  private final Thread mShutdownHook;
+
+  /**
+   * Instantiates a new asynchronous stream with the default capacity.
+   *
+   * @param pSink
+   *          the stream receiving the bytes
+   * @param pName
+   *          the name of the writer thread
+   */
+  public AsyncOutputStream(OutputStream pSink, String pName)
+  {
+    this(pSink, pName, cDefaultCapacity);
+  }
+
+  /**
+   * Instantiates a new asynchronous stream.
+   *
+   * @param pSink
+   *          the stream receiving the bytes
+   * @param pName
+   *          the name of the writer thread
+   * @param pCapacity
+   *          the number of bytes buffered at most
+   */
+  public AsyncOutputStream(OutputStream pSink, String pName, int pCapacity)
+  {
+    mSink = pSink;
+    mBuffer = new byte[pCapacity];
+
+    mWriter = new Thread(this::drain, pName);
+    mWriter.setDaemon(true);
+    mWriter.start();
+
+    mShutdownHook = new Thread(() -> flush(cShutdownFlushTimeoutMillis),
+                               pName + " shutdown flush");
+    Runtime.getRuntime().addShutdownHook(mShutdownHook);
+  }
+
+  @Override
+  public void write(int b)
+  {
+    synchronized (mSingle)
+    {
+      mSingle[0] = (byte) b;
+      write(mSingle, 0, 1);
+    }
+  }
+
+  @Override
+  public synchronized void write(byte[] pBuffer, int pOffset, int pLength)
+  {
+    if (mClosed)
+      return;
+
+    final int lCount = Math.min(pLength, mBuffer.length - mSize);
+    mDroppedBytes += pLength - lCount;
+
+    int lTail = (mHead + mSize) % mBuffer.length;
+    final int lFirst = Math.min(lCount, mBuffer.length - lTail);
+    System.arraycopy(pBuffer, pOffset, mBuffer, lTail, lFirst);
+    System.arraycopy(pBuffer, pOffset + lFirst, mBuffer, 0, lCount - lFirst);
+
+    if (mSize == 0 && lCount > 0)
+      notifyAll();
+    mSize += lCount;
+  }
+
+  /**
+   * Does not wait for the sink; use {@link #flush(long)} to wait for the
+   * pending bytes to be written.
+   */
+  @Override
+  public void flush()
+  {
+  }
+
+  /**
+   * Waits until the pending bytes are written to the sink, or the timeout
+   * elapses.
+   *
+   * @param pTimeoutMillis
+   *          the maximum delay
+   * @return true if all bytes were written
+   */
+  public synchronized boolean flush(long pTimeoutMillis)
+  {
+    final long lDeadline = System.currentTimeMillis() + pTimeoutMillis;
+    try
+    {
+      while (mSize > 0 || mWriting)
+      {
+        final long lRemaining = lDeadline - System.currentTimeMillis();
+        if (lRemaining <= 0)
+          return false;
+        wait(lRemaining);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes the pending bytes within {@link #cShutdownFlushTimeoutMillis},
+   * stops the writer thread and unregisters the shutdown flush. The sink is
+   * not closed.
+   */
+  @Override
+  public void close()
+  {
+    flush(cShutdownFlushTimeoutMillis);
+    synchronized (this)
+    {
+      mClosed = true;
+      notifyAll();
+    }
+    try
+    {
+      Runtime.getRuntime().removeShutdownHook(mShutdownHook);
+    }
+    catch (IllegalStateException e)
+    {
+      // the JVM is shutting down, the hook is running or has run
+    }
+  }
+
+  /**
+   * Gets the number of bytes dropped because the buffer was full.
+   *
+   * @return the number of dropped bytes
+   */
+  public synchronized long getDroppedBytes()
+  {
+    return mDroppedBytes;
+  }
+
+  /**
+   * Gets the number of bytes waiting to be written.
+   *
+   * @return the number of pending bytes
+   */
+  public synchronized int getPendingBytes()
+  {
+    return mSize;
+  }
+
+  private void drain()
+  {
+    while (true)
+    {
+      int lCount;
+      long lDropped;
+      synchronized (this)
+      {
+        mWriting = false;
+        notifyAll();
+        try
+        {
+          while (mSize == 0 && !mClosed)
+            wait();
+        }
+        catch (InterruptedException e)
+        {
+          return;
+        }
+        if (mSize == 0)
+          return;
+
+        lCount = Math.min(mSize, mBatch.length);
+        final int lFirst = Math.min(lCount, mBuffer.length - mHead);
+        System.arraycopy(mBuffer, mHead, mBatch, 0, lFirst);
+        System.arraycopy(mBuffer, 0, mBatch, lFirst, lCount - lFirst);
+        mHead = (mHead + lCount) % mBuffer.length;
+        mSize -= lCount;
+
+        lDropped = mDroppedBytes - mReportedDroppedBytes;
+        mReportedDroppedBytes = mDroppedBytes;
+        mWriting = true;
+      }
+
+      try
+      {
+        mSink.write(mBatch, 0, lCount);
+        if (lDropped > 0)
+          mSink.write(String.format("%n... %d bytes dropped ...%n", lDropped)
+                            .getBytes(StandardCharsets.UTF_8));
+        mSink.flush();
+      }
+      catch (IOException e)
+      {
+        // the sink is gone, nothing sensible can report it
+      }
+    }
+  }
+}
@@ -0,0 +1,436 @@
+package halcyon.view.console;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import halcyon.model.console.ConsoleLevel;
+import halcyon.model.console.ConsoleLine;
+import halcyon.model.console.ConsoleRecord;
+import halcyon.model.console.ConsoleRecordPool;
+
+/**
+ * Ingestion pipeline between producers and a console view. Producers submit
+ * pooled {@link ConsoleRecord}s, plain texts being adapted into records; each
+ * record is split into {@link ConsoleLine}s on the producer thread and
+ * returned to the pool right away. The JavaFX application thread receives at
+ * most one batch of finished lines per pulse. A batch never exceeds a fixed
+ * number of lines so that the cost per frame stays bounded under heavy load.
+ * <p>
+ * Pending lines are held in a bounded queue. When it is full, the
+ * {@link OverflowPolicy} decides which lines are discarded; discarded lines
+ * are counted and the view receives a marker line telling how many lines were
+ * dropped.
+ * <p>
+ * Consecutive identical lines, optionally identical once their digits are
+ * masked, are collapsed into the first one: its repeat count grows and the
+ * repeat listener is told to render it again, so a status line printed in a
+ * polling loop costs one row.
+ */
+public class ConsoleIngestion implements RecordAppender
+{
+  /** default maximum number of lines handed to the view per pulse */
+  public static final int cDefaultMaxBatchSize = 2048;
+
+  /** default maximum number of pending lines */
+  public static final int cDefaultCapacity = 65536;
+
+  /** default sampling interval of {@link OverflowPolicy#Sample} */
+  public static final int cDefaultSampleInterval = 10;
+
+  private final ArrayBlockingQueue<ConsoleLine> mQueue;
+
+  private final ConsoleRecordPool mPool;
+
+  private final Consumer<List<ConsoleLine>> mSink;
+
+  private final int mMaxBatchSize;
+
+  // Only accessed from the JavaFX application thread
+  private final List<ConsoleLine> mBatch;
+
+  private final Consumer<ConsoleLine> mEnqueue = this::enqueue;
+
+  private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+  private volatile boolean mStarted = false;
+
+  /** time of start(), latency is not counted before */
+  private volatile long mStartTime;
+
+  private volatile OverflowPolicy mOverflowPolicy =
+                                                  OverflowPolicy.DropOldest;
+
+  private volatile int mSampleInterval = cDefaultSampleInterval;
+
+  private volatile boolean mCollapseRepeats = true;
+
+  private volatile boolean mMaskDigits = false;
+
+  private volatile Consumer<ConsoleLine> mRepeatListener;
+
+  private final AtomicLong mSampleCounter = new AtomicLong();
+
+  private final AtomicLong mDroppedLines = new AtomicLong();
+
+  private final AtomicLong mDroppedBytes = new AtomicLong();
+
+  private final ConsoleMetrics mMetrics = new ConsoleMetrics(this);
+
+  // Only accessed from the JavaFX application thread
+  private long mReportedDroppedLines = 0;
+  private long mReportedDroppedBytes = 0;
+  private ConsoleLine mLastLine;
+
+  private final AnimationTimer mTimer = new AnimationTimer()
+  {
+    @Override
+    public void handle(long now)
+    {
+      pulse();
+    }
+  };
+
+  /**
+   * Instantiates a new ingestion pipeline with the default batch size and
+   * capacity.
+   * 
+   * @param pSink
+   *          receives the batches on the JavaFX application thread
+   */
+  public ConsoleIngestion(Consumer<List<ConsoleLine>> pSink)
+  {
+    this(pSink, cDefaultMaxBatchSize, cDefaultCapacity);
+  }
+
+  /**
+   * Instantiates a new ingestion pipeline.
+   * 
+   * @param pSink
+   *          receives the batches on the JavaFX application thread
+   * @param pMaxBatchSize
+   *          the maximum number of lines per batch
+   * @param pCapacity
+   *          the maximum number of pending lines
+   */
+  public ConsoleIngestion(Consumer<List<ConsoleLine>> pSink,
+                          int pMaxBatchSize,
+                          int pCapacity)
+  {
+    mSink = pSink;
+    mMaxBatchSize = pMaxBatchSize;
+    mBatch = new ArrayList<>(pMaxBatchSize + 1);
+    mQueue = new ArrayBlockingQueue<>(pCapacity);
+    mPool = new ConsoleRecordPool(Math.min(pCapacity, 2 * pMaxBatchSize));
+  }
+
+  /**
+   * Starts delivering batches. Lines submitted before are kept and delivered
+   * with the first pulse.
+   */
+  public void start()
+  {
+    mStartTime = ConsoleRecord.now();
+    mStarted = true;
+    schedule();
+  }
+
+  /**
+   * Gets the overflow policy.
+   * 
+   * @return the overflow policy
+   */
+  public OverflowPolicy getOverflowPolicy()
+  {
+    return mOverflowPolicy;
+  }
+
+  /**
+   * Sets the overflow policy.
+   * 
+   * @param pOverflowPolicy
+   *          the overflow policy
+   */
+  public void setOverflowPolicy(OverflowPolicy pOverflowPolicy)
+  {
+    mOverflowPolicy = pOverflowPolicy;
+  }
+
+  /**
+   * Sets how many lines are seen per kept line under
+   * {@link OverflowPolicy#Sample}.
+   * 
+   * @param pSampleInterval
+   *          the N of "1-in-N"
+   */
+  public void setSampleInterval(int pSampleInterval)
+  {
+    mSampleInterval = Math.max(1, pSampleInterval);
+  }
+
+  /**
+   * Sets whether consecutive identical lines are collapsed.
+   * 
+   * @param pCollapseRepeats
+   *          true to collapse repeated lines
+   */
+  public void setCollapseRepeats(boolean pCollapseRepeats)
+  {
+    mCollapseRepeats = pCollapseRepeats;
+  }
+
+  /**
+   * Sets whether lines differing only by their digits, e.g. counters or
+   * timestamps, count as repeated.
+   * 
+   * @param pMaskDigits
+   *          true to ignore digits when comparing lines
+   */
+  public void setMaskDigits(boolean pMaskDigits)
+  {
+    mMaskDigits = pMaskDigits;
+  }
+
+  /**
+   * Sets the listener told, on the JavaFX application thread, that the repeat
+   * count of an already delivered line grew.
+   * 
+   * @param pRepeatListener
+   *          the listener, or null
+   */
+  public void setRepeatListener(Consumer<ConsoleLine> pRepeatListener)
+  {
+    mRepeatListener = pRepeatListener;
+  }
+
+  /**
+   * Gets the number of lines discarded so far.
+   * 
+   * @return the number of dropped lines
+   */
+  public long getDroppedLines()
+  {
+    return mDroppedLines.get();
+  }
+
+  /**
+   * Gets the number of UTF-8 bytes discarded so far.
+   * 
+   * @return the number of dropped bytes
+   */
+  public long getDroppedBytes()
+  {
+    return mDroppedBytes.get();
+  }
+
+  /**
+   * Gets the live metrics of this pipeline.
+   * 
+   * @return the metrics
+   */
+  public ConsoleMetrics getMetrics()
+  {
+    return mMetrics;
+  }
+
+  /**
+   * Gets the number of pending lines.
+   * 
+   * @return the queue depth
+   */
+  public int getQueueDepth()
+  {
+    return mQueue.size();
+  }
+
+  /**
+   * Gets the maximum number of pending lines.
+   * 
+   * @return the queue capacity
+   */
+  public int getCapacity()
+  {
+    return mQueue.size() + mQueue.remainingCapacity();
+  }
+
+  /**
+   * Discards the pending lines without counting them as dropped. Must be
+   * called on the JavaFX application thread.
+   */
+  public void clear()
+  {
+    mQueue.clear();
+    mLastLine = null;
+  }
+
+  @Override
+  public ConsoleRecord obtainRecord()
+  {
+    return mPool.acquire();
+  }
+
+  @Override
+  public void append(ConsoleRecord record)
+  {
+    mMetrics.ingested(record.getByteCount());
+    // split here so that the JavaFX thread only hands finished lines over
+    ConsoleLine.split(record, mEnqueue);
+    mPool.release(record);
+    schedule();
+  }
+
+  private void enqueue(ConsoleLine pLine)
+  {
+    OverflowPolicy lPolicy = mOverflowPolicy;
+    // Nothing drains the queue before start(), e.g. while a WebView console
+    // has never been shown, so blocking would stall the producers for good:
+    // until then Block falls back to DropOldest.
+    if (lPolicy == OverflowPolicy.Block && !mStarted)
+      lPolicy = OverflowPolicy.DropOldest;
+
+    switch (lPolicy)
+    {
+    case Block:
+      // the JavaFX thread drains the queue, it must never wait on it
+      if (Platform.isFxApplicationThread())
+      {
+        if (!mQueue.offer(pLine))
+          drop(pLine);
+        break;
+      }
+      try
+      {
+        if (!mQueue.offer(pLine))
+        {
+          schedule();
+          mQueue.put(pLine);
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        drop(pLine);
+      }
+      break;
+
+    case DropOldest:
+      while (!mQueue.offer(pLine))
+      {
+        ConsoleLine lOldest = mQueue.poll();
+        if (lOldest != null)
+          drop(lOldest);
+      }
+      break;
+
+    case DropNewest:
+      if (!mQueue.offer(pLine))
+        drop(pLine);
+      break;
+
+    case Sample:
+      if (mQueue.remainingCapacity() < mQueue.size()
+          && mSampleCounter.incrementAndGet() % mSampleInterval != 0)
+        drop(pLine);
+      else if (!mQueue.offer(pLine))
+        drop(pLine);
+      break;
+    }
+  }
+
+  private void drop(ConsoleLine pLine)
+  {
+    mDroppedLines.incrementAndGet();
+    mDroppedBytes.addAndGet(pLine.getByteCount());
+  }
+
+  private void schedule()
+  {
+    if (mStarted && !mQueue.isEmpty()
+        && mScheduled.compareAndSet(false, true))
+      Platform.runLater(mTimer::start);
+  }
+
+  private void pulse()
+  {
+    mQueue.drainTo(mBatch, mMaxBatchSize);
+    final long lNow = ConsoleRecord.now();
+    final long lStartTime = mStartTime;
+    for (int i = 0; i < mBatch.size(); i++)
+      mMetrics.latency(lNow - Math.max(lStartTime,
+                                       mBatch.get(i).getTimestamp()));
+
+    final ConsoleLine lPrevious = mLastLine;
+    final int lPreviousCount = lPrevious == null ? 0
+                                                 : lPrevious.getRepeatCount();
+    if (mCollapseRepeats)
+      collapse();
+    else
+      mLastLine = null;
+
+    final long lDroppedLines = mDroppedLines.get();
+    if (lDroppedLines != mReportedDroppedLines)
+    {
+      final long lDroppedBytes = mDroppedBytes.get();
+      final String lMarker =
+                           String.format("... %d lines (%d bytes) dropped ...",
+                                         lDroppedLines - mReportedDroppedLines,
+                                         lDroppedBytes - mReportedDroppedBytes);
+      mLastLine = new ConsoleLine(ConsoleLevel.NOTICE, lMarker);
+      mBatch.add(mLastLine);
+      mReportedDroppedLines = lDroppedLines;
+      mReportedDroppedBytes = lDroppedBytes;
+    }
+
+    final Consumer<ConsoleLine> lRepeatListener = mRepeatListener;
+    if (lPrevious != null && lPrevious.getRepeatCount() != lPreviousCount
+        && lRepeatListener != null)
+      lRepeatListener.accept(lPrevious);
+
+    if (!mBatch.isEmpty())
+    {
+      mMetrics.delivered(mBatch.size());
+      try
+      {
+        mSink.accept(mBatch);
+      }
+      finally
+      {
+        mBatch.clear();
+      }
+    }
+    else
+    {
+      // idle pulse: stop the timer until new lines arrive
+      mTimer.stop();
+      mScheduled.set(false);
+      schedule();
+    }
+  }
+
+  /**
+   * Removes from the batch the lines repeating the line before them, counting
+   * them on that line.
+   */
+  private void collapse()
+  {
+    final boolean lMaskDigits = mMaskDigits;
+    int lKept = 0;
+    for (int i = 0; i < mBatch.size(); i++)
+    {
+      final ConsoleLine lLine = mBatch.get(i);
+      if (mLastLine != null && mLastLine.isRepeatedBy(lLine, lMaskDigits))
+      {
+        mLastLine.addRepeats(1);
+        continue;
+      }
+      mBatch.set(lKept++, lLine);
+      mLastLine = lLine;
+    }
+    mBatch.subList(lKept, mBatch.size()).clear();
+  }
+}
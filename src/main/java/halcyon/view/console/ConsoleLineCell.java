@@ -0,0 +1,40 @@
+package halcyon.view.console;
+
+import javafx.scene.control.ListCell;
+
+import halcyon.model.console.ConsoleLevel;
+import halcyon.model.console.ConsoleLine;
+
+/**
+ * List cell rendering a {@link ConsoleLine} with the style class of its level,
+ * its color and its repeat count.
+ */
+class ConsoleLineCell extends ListCell<ConsoleLine>
+{
+  @Override
+  protected void updateItem(ConsoleLine item, boolean empty)
+  {
+    super.updateItem(item, empty);
+
+    for (ConsoleLevel lLevel : ConsoleLevel.values())
+      getStyleClass().remove(lLevel.getStyleClass());
+
+    if (empty || item == null)
+    {
+      setText(null);
+      setStyle(null);
+      return;
+    }
+
+    if (item.getRepeatCount() > 1)
+      setText(item.getText() + "  (\u00d7" + item.getRepeatCount() + ")");
+    else
+      setText(item.getText());
+    getStyleClass().add(item.getLevel().getStyleClass());
+
+    if (item.getColor() != ConsoleLine.cNoColor)
+      setStyle(String.format("-fx-text-fill: #%06x;", item.getColor()));
+    else
+      setStyle(null);
+  }
+}
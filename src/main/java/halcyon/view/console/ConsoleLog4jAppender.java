@@ -0,0 +1,96 @@
+package halcyon.view.console;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Property;
+
+import halcyon.model.console.ConsoleLevel;
+import halcyon.model.console.ConsoleRecord;
+
+/**
+ * Log4j 2 appender feeding a console directly with structured records, without
+ * going through the captured standard streams. SLF4J loggers reach it through
+ * the log4j-slf4j binding. As with {@link ConsoleLogHandler}, the logging
+ * thread only fills a pooled record and queues it.
+ */
+public class ConsoleLog4jAppender extends AbstractAppender
+{
+  private static final long serialVersionUID = 1L;
+
+  private final transient RecordAppender mAppender;
+
+  /**
+   * Instantiates a new appender.
+   *
+   * @param pName
+   *          the appender name
+   * @param pFilter
+   *          the filter, or null
+   * @param pAppender
+   *          the console receiving the records
+   */
+  public ConsoleLog4jAppender(String pName,
+                              Filter pFilter,
+                              RecordAppender pAppender)
+  {
+    super(pName, pFilter, null, true, Property.EMPTY_ARRAY);
+    mAppender = pAppender;
+  }
+
+  /**
+   * Creates an appender and adds it to the root logger of the current logger
+   * context.
+   *
+   * @param pName
+   *          the appender name
+   * @param pAppender
+   *          the console receiving the records
+   * @return the appender
+   */
+  public static ConsoleLog4jAppender install(String pName,
+                                             RecordAppender pAppender)
+  {
+    LoggerContext lContext = (LoggerContext) LogManager.getContext(false);
+    Configuration lConfiguration = lContext.getConfiguration();
+
+    ConsoleLog4jAppender lAppender = new ConsoleLog4jAppender(pName,
+                                                              null,
+                                                              pAppender);
+    lAppender.start();
+    lConfiguration.addAppender(lAppender);
+    lConfiguration.getRootLogger().addAppender(lAppender, null, null);
+    lContext.updateLoggers();
+    return lAppender;
+  }
+
+  @Override
+  public void append(LogEvent pEvent)
+  {
+    String lMessage = pEvent.getMessage().getFormattedMessage();
+    if (pEvent.getThrown() != null)
+      lMessage = lMessage + System.lineSeparator()
+                 + ConsoleLogHandler.stackTrace(pEvent.getThrown());
+
+    ConsoleRecord lRecord = mAppender.obtainRecord()
+                                     .set(toConsoleLevel(pEvent.getLevel()),
+                                          pEvent.getLoggerName(),
+                                          lMessage);
+    lRecord.setTimestamp(pEvent.getTimeMillis() * 1_000_000L);
+    lRecord.setThread(pEvent.getThreadName());
+    mAppender.append(lRecord);
+  }
+
+  private static ConsoleLevel toConsoleLevel(Level pLevel)
+  {
+    if (pLevel.isMoreSpecificThan(Level.ERROR))
+      return ConsoleLevel.ERROR;
+    if (pLevel.isMoreSpecificThan(Level.WARN))
+      return ConsoleLevel.WARN;
+    return ConsoleLevel.INFO;
+  }
+}
@@ -0,0 +1,112 @@
+package halcyon.view.console;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import halcyon.model.console.ConsoleLevel;
+import halcyon.model.console.ConsoleRecord;
+
+/**
+ * java.util.logging handler feeding a console directly with structured
+ * records, without going through the captured standard streams. The calling
+ * thread only fills a pooled record and queues it; batching and rendering
+ * happen on the console side, and whether a full queue drops records or
+ * waits is decided by the console's {@link OverflowPolicy}.
+ */
+public class ConsoleLogHandler extends Handler
+{
+  private final RecordAppender mAppender;
+
+  /**
+   * Instantiates a new handler publishing records of all levels.
+   *
+   * @param pAppender
+   *          the console receiving the records
+   */
+  public ConsoleLogHandler(RecordAppender pAppender)
+  {
+    mAppender = pAppender;
+    setFormatter(new SimpleFormatter());
+    setLevel(Level.ALL);
+  }
+
+  /**
+   * Creates a handler and adds it to a logger.
+   *
+   * @param pLogger
+   *          the logger, e.g. the root logger
+   * @param pAppender
+   *          the console receiving the records
+   * @return the handler
+   */
+  public static ConsoleLogHandler install(Logger pLogger,
+                                          RecordAppender pAppender)
+  {
+    ConsoleLogHandler lHandler = new ConsoleLogHandler(pAppender);
+    pLogger.addHandler(lHandler);
+    return lHandler;
+  }
+
+  @Override
+  public void publish(LogRecord pRecord)
+  {
+    if (!isLoggable(pRecord))
+      return;
+
+    String lMessage;
+    try
+    {
+      lMessage = getFormatter().formatMessage(pRecord);
+    }
+    catch (RuntimeException e)
+    {
+      reportError(null, e, ErrorManager.FORMAT_FAILURE);
+      return;
+    }
+
+    if (pRecord.getThrown() != null)
+      lMessage = lMessage + System.lineSeparator()
+                 + stackTrace(pRecord.getThrown());
+
+    ConsoleRecord lRecord = mAppender.obtainRecord()
+                                     .set(toConsoleLevel(pRecord.getLevel()),
+                                          pRecord.getLoggerName(),
+                                          lMessage);
+    lRecord.setTimestamp(pRecord.getMillis() * 1_000_000L);
+    mAppender.append(lRecord);
+  }
+
+  @Override
+  public void flush()
+  {
+  }
+
+  @Override
+  public void close()
+  {
+    setLevel(Level.OFF);
+  }
+
+  static ConsoleLevel toConsoleLevel(Level pLevel)
+  {
+    final int lValue = pLevel.intValue();
+    if (lValue >= Level.SEVERE.intValue())
+      return ConsoleLevel.ERROR;
+    if (lValue >= Level.WARNING.intValue())
+      return ConsoleLevel.WARN;
+    return ConsoleLevel.INFO;
+  }
+
+  static String stackTrace(Throwable pThrowable)
+  {
+    StringWriter lWriter = new StringWriter();
+    pThrowable.printStackTrace(new PrintWriter(lWriter));
+    return lWriter.toString();
+  }
+}
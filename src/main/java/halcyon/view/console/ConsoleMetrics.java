@@ -0,0 +1,215 @@
+package halcyon.view.console;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of a {@link ConsoleIngestion}: ingested records and bytes,
+ * delivered lines, queue depth, drops, batch sizes and the latency between a
+ * record's timestamp, or the start of the ingestion if later, and its delivery
+ * to the view. Counters are updated without locks; rates are computed when
+ * read, over the time elapsed since they were last computed, but at least half
+ * a second. The histograms cover the period since the previous
+ * {@link #getSummary()}.
+ */
+public class ConsoleMetrics
+{
+  private static final long cRatePeriodNanos = TimeUnit.MILLISECONDS.toNanos(500);
+
+  private final ConsoleIngestion mIngestion;
+
+  private final LongAdder mRecords = new LongAdder();
+  private final LongAdder mBytes = new LongAdder();
+  private final LongAdder mLines = new LongAdder();
+
+  private final PowerOfTwoHistogram mBatchSizes = new PowerOfTwoHistogram();
+  private final PowerOfTwoHistogram mLatencyMicros =
+                                                   new PowerOfTwoHistogram();
+
+  // guarded by this
+  private long mRateTime = System.nanoTime();
+  private long mRateRecords = 0;
+  private long mRateBytes = 0;
+  private double mRecordsPerSecond = 0;
+  private double mBytesPerSecond = 0;
+
+  ConsoleMetrics(ConsoleIngestion pIngestion)
+  {
+    mIngestion = pIngestion;
+  }
+
+  void ingested(int pBytes)
+  {
+    mRecords.increment();
+    mBytes.add(pBytes);
+  }
+
+  void delivered(int pLines)
+  {
+    mLines.add(pLines);
+    mBatchSizes.record(pLines);
+  }
+
+  void latency(long pNanos)
+  {
+    mLatencyMicros.record(pNanos / 1000);
+  }
+
+  /**
+   * Gets the number of records submitted so far, dropped ones included.
+   *
+   * @return the number of records
+   */
+  public long getRecords()
+  {
+    return mRecords.sum();
+  }
+
+  /**
+   * Gets the number of UTF-8 bytes submitted so far, dropped ones included.
+   *
+   * @return the number of bytes
+   */
+  public long getBytes()
+  {
+    return mBytes.sum();
+  }
+
+  /**
+   * Gets the number of lines delivered to the view so far.
+   *
+   * @return the number of lines
+   */
+  public long getDeliveredLines()
+  {
+    return mLines.sum();
+  }
+
+  /**
+   * Gets the number of records submitted per second recently.
+   *
+   * @return the record rate
+   */
+  public synchronized double getRecordsPerSecond()
+  {
+    updateRates();
+    return mRecordsPerSecond;
+  }
+
+  /**
+   * Gets the number of bytes submitted per second recently.
+   *
+   * @return the byte rate
+   */
+  public synchronized double getBytesPerSecond()
+  {
+    updateRates();
+    return mBytesPerSecond;
+  }
+
+  /**
+   * Gets the number of pending lines.
+   *
+   * @return the queue depth
+   */
+  public int getQueueDepth()
+  {
+    return mIngestion.getQueueDepth();
+  }
+
+  /**
+   * Gets the number of lines dropped so far.
+   *
+   * @return the number of dropped lines
+   */
+  public long getDroppedLines()
+  {
+    return mIngestion.getDroppedLines();
+  }
+
+  /**
+   * Gets the histogram of the number of lines per delivered batch.
+   *
+   * @return the batch size histogram
+   */
+  public PowerOfTwoHistogram getBatchSizes()
+  {
+    return mBatchSizes;
+  }
+
+  /**
+   * Gets the histogram of the delay, in microseconds, between the timestamp
+   * of a record and its delivery to the view.
+   *
+   * @return the latency histogram
+   */
+  public PowerOfTwoHistogram getLatencyMicros()
+  {
+    return mLatencyMicros;
+  }
+
+  /**
+   * Forgets the batch size and latency histograms.
+   */
+  public void resetHistograms()
+  {
+    mBatchSizes.reset();
+    mLatencyMicros.reset();
+  }
+
+  /**
+   * Formats the main figures on one line, e.g. for a status bar, then resets
+   * the histograms so that the next summary only reflects what happened in
+   * between.
+   *
+   * @return the summary
+   */
+  public synchronized String getSummary()
+  {
+    final String lSummary =
+                          String.format("%,.0f records/s  %s/s  queue %,d  batch p50 %d  dropped %,d  latency p50 %s p99 %s",
+                                        getRecordsPerSecond(),
+                                        formatBytes(getBytesPerSecond()),
+                                        getQueueDepth(),
+                                        mBatchSizes.getPercentile(50),
+                                        getDroppedLines(),
+                                        formatMicros(mLatencyMicros.getPercentile(50)),
+                                        formatMicros(mLatencyMicros.getPercentile(99)));
+    resetHistograms();
+    return lSummary;
+  }
+
+  private void updateRates()
+  {
+    final long lNow = System.nanoTime();
+    final long lElapsed = lNow - mRateTime;
+    if (lElapsed < cRatePeriodNanos)
+      return;
+
+    final long lRecords = mRecords.sum();
+    final long lBytes = mBytes.sum();
+    mRecordsPerSecond = (lRecords - mRateRecords) * 1e9 / lElapsed;
+    mBytesPerSecond = (lBytes - mRateBytes) * 1e9 / lElapsed;
+    mRateTime = lNow;
+    mRateRecords = lRecords;
+    mRateBytes = lBytes;
+  }
+
+  private static String formatBytes(double pBytes)
+  {
+    if (pBytes < 1024)
+      return String.format("%.0f B", pBytes);
+    if (pBytes < 1024 * 1024)
+      return String.format("%.1f KB", pBytes / 1024);
+    return String.format("%.1f MB", pBytes / (1024 * 1024));
+  }
+
+  private static String formatMicros(long pMicros)
+  {
+    if (pMicros < 1000)
+      return pMicros + " us";
+    if (pMicros < 1_000_000)
+      return pMicros / 1000 + " ms";
+    return pMicros / 1_000_000 + " s";
+  }
+}
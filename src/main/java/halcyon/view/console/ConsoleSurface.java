@@ -0,0 +1,68 @@
+package halcyon.view.console;
+
+import java.util.List;
+import javafx.scene.Node;
+
+import halcyon.model.console.ConsoleLine;
+
+/**
+ * Rendering surface of a {@link halcyon.view.ConsolePane}. All methods are
+ * invoked on the JavaFX application thread.
+ */
+public interface ConsoleSurface
+{
+  /**
+   * Gets the JavaFX node showing the lines.
+   * 
+   * @return the node
+   */
+  public Node getNode();
+
+  /**
+   * Appends lines to the surface.
+   * 
+   * @param lines
+   *          the lines to append
+   */
+  public void append(List<ConsoleLine> lines);
+
+  /**
+   * Removes all the lines.
+   */
+  public void clear();
+
+  /**
+   * Scrolls to the last line.
+   */
+  public void scrollToEnd();
+
+  /**
+   * Tells whether the last line is shown, i.e. whether the surface should keep
+   * following the appended lines.
+   * 
+   * @return true if the view is scrolled to the end
+   */
+  default public boolean isAtEnd()
+  {
+    return true;
+  }
+
+  /**
+   * Releases the resources held by the surface, e.g. scrollback files. The
+   * surface must not be used afterwards.
+   */
+  default public void close()
+  {
+    clear();
+  }
+
+  /**
+   * Renders again a line already appended, e.g. after its repeat count grew.
+   * 
+   * @param line
+   *          the line
+   */
+  default public void refresh(ConsoleLine line)
+  {
+  }
+}
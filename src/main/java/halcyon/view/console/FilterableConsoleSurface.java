@@ -0,0 +1,17 @@
+package halcyon.view.console;
+
+import halcyon.model.console.ConsoleFilter;
+
+/**
+ * Console surface that can show only the lines matching a filter.
+ */
+public interface FilterableConsoleSurface extends ConsoleSurface
+{
+  /**
+   * Shows only the lines matching a filter.
+   * 
+   * @param filter
+   *          the filter, or null to show all lines
+   */
+  public void setFilter(ConsoleFilter filter);
+}
@@ -0,0 +1,268 @@
+package halcyon.view.console;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental UTF-8 decoder that splits a byte stream into lines and hands
+ * each complete line to a {@link TextAppender}. Decoder and buffers are
+ * reused, so decoding does not allocate per byte; multi-byte characters split
+ * across writes are carried over to the next write. A trailing partial line is
+ * emitted on its own once no byte arrived for a short timeout.
+ * <p>
+ * In batching mode, all lines completed by one call to
+ * {@link #decode(byte[], int, int)} are emitted together as one multi-line
+ * text, each with its own prefix, which saves a hand-off per line for
+ * producers writing large chunks.
+ */
+public class LineDecoder
+{
+  /** default delay after which a partial line is emitted */
+  public static final long cDefaultPartialLineTimeoutMillis = 100;
+
+  private static final int cBufferSize = 8192;
+
+  private static final int cMaxRetainedLineCapacity = 64 * 1024;
+
+  private static final ScheduledExecutorService cScheduler =
+                                                          Executors.newSingleThreadScheduledExecutor(r -> {
+                                                            Thread lThread =
+                                                                           new Thread(r,
+                                                                                      "LineDecoder partial line flusher");
+                                                            lThread.setDaemon(true);
+                                                            return lThread;
+                                                          });
+
+  private final CharsetDecoder mDecoder =
+                                        StandardCharsets.UTF_8.newDecoder()
+                                                              .onMalformedInput(CodingErrorAction.REPLACE)
+                                                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  private final ByteBuffer mBytes = ByteBuffer.allocate(cBufferSize);
+
+  private final CharBuffer mChars = CharBuffer.allocate(cBufferSize);
+
+  private final String mPrefix;
+
+  private final TextAppender mTextAppender;
+
+  private final long mPartialLineTimeoutNanos;
+
+  private final boolean mBatchLines;
+
+  private final Runnable mPartialLineCheck = this::checkPartialLine;
+
+  private StringBuilder mLine = new StringBuilder(128);
+
+  /** in batching mode, length of the complete lines at the start of mLine */
+  private int mCompleteLength = 0;
+
+  private long mLastDecode;
+
+  private boolean mCheckScheduled = false;
+
+  /**
+   * Instantiates a new line decoder with the default partial line timeout.
+   * 
+   * @param pPrefix
+   *          the text put in front of every line, e.g. "[INFO] "
+   * @param pTextAppender
+   *          receives the lines
+   */
+  public LineDecoder(String pPrefix, TextAppender pTextAppender)
+  {
+    this(pPrefix, pTextAppender, cDefaultPartialLineTimeoutMillis);
+  }
+
+  /**
+   * Instantiates a new line decoder.
+   * 
+   * @param pPrefix
+   *          the text put in front of every line, e.g. "[INFO] "
+   * @param pTextAppender
+   *          receives the lines
+   * @param pPartialLineTimeoutMillis
+   *          the delay after which a partial line is emitted
+   */
+  public LineDecoder(String pPrefix,
+                     TextAppender pTextAppender,
+                     long pPartialLineTimeoutMillis)
+  {
+    this(pPrefix, pTextAppender, pPartialLineTimeoutMillis, false);
+  }
+
+  /**
+   * Instantiates a new line decoder, optionally emitting the lines completed
+   * by one decode call together.
+   * 
+   * @param pPrefix
+   *          the text put in front of every line, e.g. "[INFO] "
+   * @param pTextAppender
+   *          receives the lines
+   * @param pPartialLineTimeoutMillis
+   *          the delay after which a partial line is emitted
+   * @param pBatchLines
+   *          true to emit the lines completed by one decode call as one text
+   */
+  public LineDecoder(String pPrefix,
+                     TextAppender pTextAppender,
+                     long pPartialLineTimeoutMillis,
+                     boolean pBatchLines)
+  {
+    mPrefix = pPrefix;
+    mTextAppender = pTextAppender;
+    mPartialLineTimeoutNanos =
+                             TimeUnit.MILLISECONDS.toNanos(pPartialLineTimeoutMillis);
+    mBatchLines = pBatchLines;
+    mLine.append(mPrefix);
+  }
+
+  /**
+   * Decodes bytes, emitting every line completed by them.
+   * 
+   * @param pBuffer
+   *          the buffer
+   * @param pOffset
+   *          the offset of the first byte
+   * @param pLength
+   *          the number of bytes
+   */
+  public synchronized void decode(byte[] pBuffer,
+                                  int pOffset,
+                                  int pLength)
+  {
+    while (pLength > 0)
+    {
+      final int lCount = Math.min(pLength, mBytes.remaining());
+      mBytes.put(pBuffer, pOffset, lCount);
+      pOffset += lCount;
+      pLength -= lCount;
+
+      mBytes.flip();
+      CoderResult lResult;
+      do
+      {
+        lResult = mDecoder.decode(mBytes, mChars, false);
+        mChars.flip();
+        split();
+        mChars.clear();
+      }
+      while (lResult.isOverflow());
+      // incomplete multi-byte sequences stay in the buffer
+      mBytes.compact();
+    }
+    if (mBatchLines)
+      emitComplete();
+
+    mLastDecode = System.nanoTime();
+    if (hasPartialLine() && !mCheckScheduled)
+    {
+      mCheckScheduled = true;
+      cScheduler.schedule(mPartialLineCheck,
+                          mPartialLineTimeoutNanos,
+                          TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Emits the pending partial line, if any.
+   */
+  public synchronized void flush()
+  {
+    if (hasPartialLine())
+    {
+      mLine.append(System.lineSeparator());
+      if (mBatchLines)
+      {
+        mCompleteLength = mLine.length();
+        emitComplete();
+      }
+      else
+        emit();
+    }
+  }
+
+  private void split()
+  {
+    final char[] lArray = mChars.array();
+    final int lEnd = mChars.arrayOffset() + mChars.limit();
+    int lStart = mChars.arrayOffset() + mChars.position();
+
+    for (int i = lStart; i < lEnd; i++)
+    {
+      if (lArray[i] == '\n')
+      {
+        mLine.append(lArray, lStart, i + 1 - lStart);
+        if (mBatchLines)
+        {
+          mCompleteLength = mLine.length();
+          mLine.append(mPrefix);
+        }
+        else
+          emit();
+        lStart = i + 1;
+      }
+    }
+
+    if (lStart < lEnd)
+      mLine.append(lArray, lStart, lEnd - lStart);
+  }
+
+  private boolean hasPartialLine()
+  {
+    return mLine.length() > mCompleteLength + mPrefix.length();
+  }
+
+  private void emit()
+  {
+    mTextAppender.appendText(mLine.toString());
+
+    if (mLine.capacity() > cMaxRetainedLineCapacity)
+      mLine = new StringBuilder(128);
+    else
+      mLine.setLength(0);
+    mLine.append(mPrefix);
+  }
+
+  private void emitComplete()
+  {
+    if (mCompleteLength == 0)
+      return;
+
+    final String lText = mLine.substring(0, mCompleteLength);
+    if (mLine.capacity() > cMaxRetainedLineCapacity)
+      mLine = new StringBuilder(128).append(mLine,
+                                            mCompleteLength,
+                                            mLine.length());
+    else
+      mLine.delete(0, mCompleteLength);
+    mCompleteLength = 0;
+    mTextAppender.appendText(lText);
+  }
+
+  private synchronized void checkPartialLine()
+  {
+    mCheckScheduled = false;
+    if (!hasPartialLine())
+      return;
+
+    final long lRemaining = mLastDecode + mPartialLineTimeoutNanos
+                            - System.nanoTime();
+    if (lRemaining <= 0)
+      flush();
+    else
+    {
+      mCheckScheduled = true;
+      cScheduler.schedule(mPartialLineCheck,
+                          lRemaining,
+                          TimeUnit.NANOSECONDS);
+    }
+  }
+}
@@ -0,0 +1,343 @@
+package halcyon.view.console;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+
+import halcyon.model.console.ConsoleLine;
+import halcyon.model.console.MappedLogFile;
+
+/**
+ * Virtualized view following a {@link MappedLogFile}, like "tail -f". The file
+ * is opened by the first {@link #poll()}, and new lines are indexed by the
+ * following ones, on a background thread, then shown on the next JavaFX
+ * pulse. Earlier parts of the file are indexed on demand, by the next poll as
+ * well, and so is a rotated file reopened: the JavaFX thread never opens nor
+ * scans the file.
+ */
+public class LogFileView extends BorderPane
+{
+  /** maximum number of bytes indexed per poll */
+  public static final int cMaxBytesPerPoll = 16 * 1024 * 1024;
+
+  /** number of bytes indexed when loading earlier lines */
+  public static final int cEarlierBytes = 16 * 1024 * 1024;
+
+  private static final double cCellHeight = 20;
+
+  private final Path mPath;
+
+  /** null until opened by the first poll */
+  private volatile MappedLogFile mFile;
+
+  /** guards the opening and the closing of the file */
+  private final Object mOpenLock = new Object();
+
+  private boolean mClosed = false;
+
+  private boolean mOpenFailed = false;
+
+  private final LineList mItems = new LineList();
+
+  private final ListView<ConsoleLine> mListView;
+
+  private final CheckBox mFollowBox = new CheckBox("Follow");
+
+  private final Label mStatus = new Label();
+
+  private final AtomicBoolean mRefreshScheduled = new AtomicBoolean();
+
+  private final AtomicBoolean mEarlierRequested = new AtomicBoolean();
+
+  /**
+   * Instantiates a new log file view opening the file on the first
+   * {@link #poll()}.
+   *
+   * @param pPath
+   *          the path of the file
+   */
+  public LogFileView(Path pPath)
+  {
+    this(pPath, null);
+  }
+
+  /**
+   * Instantiates a new log file view on an open file.
+   *
+   * @param pFile
+   *          the file
+   */
+  public LogFileView(MappedLogFile pFile)
+  {
+    this(pFile.getPath(), pFile);
+  }
+
+  private LogFileView(Path pPath, MappedLogFile pFile)
+  {
+    mPath = pPath;
+    mFile = pFile;
+
+    mListView = new ListView<>(mItems);
+    mListView.getStyleClass().add("console-list-view");
+    mListView.getStylesheets()
+             .add(LogFileView.class.getResource("ConsoleOutput_ListView.css")
+                                   .toExternalForm());
+    mListView.setFixedCellSize(cCellHeight);
+    mListView.setCellFactory(list -> new ConsoleLineCell());
+
+    Button lEarlierButton = new Button("Load earlier");
+    lEarlierButton.setOnAction(event -> mEarlierRequested.set(true));
+
+    mFollowBox.setSelected(true);
+    mFollowBox.selectedProperty().addListener((observable,
+                                               oldValue,
+                                               newValue) -> {
+      if (newValue)
+        scrollToEnd();
+    });
+
+    HBox lTopBox = new HBox(5, lEarlierButton, mFollowBox, mStatus);
+    lTopBox.setAlignment(Pos.CENTER_LEFT);
+    setTop(lTopBox);
+    setCenter(mListView);
+
+    refresh();
+  }
+
+  /**
+   * Gets the path of the followed file.
+   *
+   * @return the path
+   */
+  public Path getPath()
+  {
+    return mPath;
+  }
+
+  /**
+   * Gets the followed file.
+   *
+   * @return the file, or null until opened by the first {@link #poll()}
+   */
+  public MappedLogFile getFile()
+  {
+    return mFile;
+  }
+
+  /**
+   * Opens the file on the first call, indexes the lines appended to it, and
+   * the earlier lines if asked for, then schedules their display. Reopens the
+   * file after a rotation. Meant for a background thread.
+   */
+  public void poll()
+  {
+    final MappedLogFile lFile = open();
+    if (lFile == null)
+      return;
+
+    try
+    {
+      int lAdded = lFile.update(cMaxBytesPerPoll);
+      if (lAdded == MappedLogFile.cRotated)
+      {
+        lFile.reopen();
+        // the lines shown are gone, the new ones are indexed by the next poll
+        Platform.runLater(this::reset);
+        return;
+      }
+
+      if (mEarlierRequested.getAndSet(false))
+        lAdded += lFile.loadEarlier(cEarlierBytes);
+
+      if (lAdded > 0 && mRefreshScheduled.compareAndSet(false, true))
+        Platform.runLater(this::refresh);
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Closes the file. The view shows no line afterwards. Can be called from any
+   * thread.
+   */
+  public void close()
+  {
+    final MappedLogFile lFile;
+    synchronized (mOpenLock)
+    {
+      mClosed = true;
+      lFile = mFile;
+    }
+    try
+    {
+      if (lFile != null)
+        lFile.close();
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace();
+    }
+    if (Platform.isFxApplicationThread())
+      mItems.reset();
+    else
+      Platform.runLater(mItems::reset);
+  }
+
+  private void refresh()
+  {
+    mRefreshScheduled.set(false);
+    final int lPrepended = mItems.sync();
+    updateStatus();
+    if (lPrepended > 0)
+      mListView.scrollTo(lPrepended);
+    else if (mFollowBox.isSelected())
+      scrollToEnd();
+  }
+
+  /**
+   * Gets the file, opening it unless done or closed already.
+   *
+   * @return the file, or null
+   */
+  private MappedLogFile open()
+  {
+    synchronized (mOpenLock)
+    {
+      if (mClosed)
+        return null;
+      if (mFile == null)
+      {
+        try
+        {
+          mFile = new MappedLogFile(mPath);
+          mOpenFailed = false;
+        }
+        catch (IOException e)
+        {
+          // the file may not exist yet, retried by the next poll
+          if (!mOpenFailed)
+            e.printStackTrace();
+          mOpenFailed = true;
+        }
+      }
+      return mFile;
+    }
+  }
+
+  private void reset()
+  {
+    mItems.reset();
+    refresh();
+  }
+
+  private void scrollToEnd()
+  {
+    if (!mItems.isEmpty())
+      mListView.scrollTo(mItems.size() - 1);
+  }
+
+  private void updateStatus()
+  {
+    final MappedLogFile lFile = mFile;
+    if (lFile == null)
+      mStatus.setText(String.format("%s  (not opened)", mPath.getFileName()));
+    else
+      mStatus.setText(String.format("%s  (from byte %,d of %,d)",
+                                    mPath.getFileName(),
+                                    lFile.getStartOffset(),
+                                    lFile.getFileSize()));
+  }
+
+  /**
+   * Observable view of the indexed lines. Its size only changes on the
+   * JavaFX application thread, together with the change notification, even
+   * though the file index grows on the polling thread.
+   */
+  private class LineList extends ObservableListBase<ConsoleLine>
+  {
+    private int mShown = 0;
+
+    /** lines of the file prepended before the last sync */
+    private long mPrepended = 0;
+
+    @Override
+    public ConsoleLine get(int index)
+    {
+      if (index < 0 || index >= mShown)
+        throw new IndexOutOfBoundsException("Index: " + index);
+      final MappedLogFile lFile = mFile;
+      synchronized (lFile)
+      {
+        // the file may have been reopened since the last sync
+        return index < lFile.size() ? lFile.get(index) : null;
+      }
+    }
+
+    @Override
+    public int size()
+    {
+      return mShown;
+    }
+
+    /**
+     * Shows the lines indexed since the last call, at the beginning and at the
+     * end.
+     *
+     * @return the number of lines added at the beginning
+     */
+    int sync()
+    {
+      final MappedLogFile lFile = mFile;
+      if (lFile == null)
+        return 0;
+
+      final int lSize;
+      final long lPrepended;
+      synchronized (lFile)
+      {
+        lSize = lFile.size();
+        lPrepended = lFile.getPrependedLines();
+      }
+
+      final int lFront = (int) (lPrepended - mPrepended);
+      final int lBack = lSize - mShown - lFront;
+      if (lFront <= 0 && lBack <= 0)
+        return 0;
+
+      mPrepended = lPrepended;
+      mShown = lSize;
+      beginChange();
+      if (lFront > 0)
+        nextAdd(0, lFront);
+      if (lBack > 0)
+        nextAdd(lSize - lBack, lSize);
+      endChange();
+      return lFront;
+    }
+
+    void reset()
+    {
+      final int lRemoved = mShown;
+      mShown = 0;
+      mPrepended = 0;
+      if (lRemoved == 0)
+        return;
+
+      beginChange();
+      nextRemove(0, Collections.nCopies(lRemoved, (ConsoleLine) null));
+      endChange();
+    }
+  }
+}
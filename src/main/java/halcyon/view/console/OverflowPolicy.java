@@ -0,0 +1,19 @@
+package halcyon.view.console;
+
+/**
+ * What a bounded console ingestion stage does with a line when it is full.
+ */
+public enum OverflowPolicy
+{
+ /**
+  * the producer waits until there is room; behaves as {@link #DropOldest}
+  * until the console starts draining
+  */
+ Block,
+ /** the oldest queued line is discarded */
+ DropOldest,
+ /** the new line is discarded */
+ DropNewest,
+ /** once the queue is half full only one line in N is kept */
+ Sample
+}
@@ -0,0 +1,91 @@
+package halcyon.view.console;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with one bucket per power of two.
+ * Recording is a single atomic increment; percentiles are reported as the
+ * upper bound of the bucket holding them, i.e. within a factor of two.
+ */
+public class PowerOfTwoHistogram
+{
+  private static final int cBuckets = 64;
+
+  private final AtomicLongArray mCounts = new AtomicLongArray(cBuckets);
+
+  /**
+   * Records a value; negative values are recorded as 0.
+   *
+   * @param pValue
+   *          the value
+   */
+  public void record(long pValue)
+  {
+    mCounts.incrementAndGet(bucket(pValue));
+  }
+
+  /**
+   * Gets the number of recorded values.
+   *
+   * @return the count
+   */
+  public long getCount()
+  {
+    long lCount = 0;
+    for (int i = 0; i < cBuckets; i++)
+      lCount += mCounts.get(i);
+    return lCount;
+  }
+
+  /**
+   * Gets an upper bound of a percentile of the recorded values.
+   *
+   * @param pPercentile
+   *          the percentile, between 0 and 100
+   * @return the upper bound, or 0 if nothing was recorded
+   */
+  public long getPercentile(double pPercentile)
+  {
+    final long[] lCounts = new long[cBuckets];
+    long lTotal = 0;
+    for (int i = 0; i < cBuckets; i++)
+    {
+      lCounts[i] = mCounts.get(i);
+      lTotal += lCounts[i];
+    }
+    if (lTotal == 0)
+      return 0;
+
+    final long lRank = Math.max(1,
+                                (long) Math.ceil(lTotal * pPercentile
+                                                 / 100));
+    long lSeen = 0;
+    for (int i = 0; i < cBuckets; i++)
+    {
+      lSeen += lCounts[i];
+      if (lSeen >= lRank)
+        return upperBound(i);
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Forgets all recorded values.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < cBuckets; i++)
+      mCounts.set(i, 0);
+  }
+
+  private static int bucket(long pValue)
+  {
+    // bucket i holds [2^(i-1), 2^i - 1], bucket 0 holds 0
+    return pValue <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(pValue);
+  }
+
+  private static long upperBound(int pBucket)
+  {
+    return pBucket >= 63 ? Long.MAX_VALUE : (1L << pBucket) - 1;
+  }
+}
@@ -0,0 +1,363 @@
+package halcyon.view.console;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import halcyon.model.collection.HalcyonNodeRepository;
+import halcyon.model.collection.HalcyonNodeRepositoryListener;
+import halcyon.model.collection.Subscription;
+import halcyon.model.console.ConsoleLevel;
+import halcyon.model.console.ConsoleRecord;
+import halcyon.model.node.HalcyonNodeInterface;
+
+/**
+ * Launches a child process and streams its standard output and error straight
+ * into a console, without going through {@link System#out}. Each stream is
+ * drained by a dedicated daemon reader thread; the lines completed by one read
+ * are handed to the console as a single multi-line record, tagged with the
+ * process name as source and text prefix, in the color of the process.
+ * Standard output is logged as {@link ConsoleLevel#INFO} and standard error as
+ * {@link ConsoleLevel#WARN}.
+ * <p>
+ * Readers apply backpressure: once the console queue is filled beyond a high
+ * watermark they stop reading until it drained below a low watermark, so the
+ * pipe fills up and a chatty child blocks on its writes instead of flooding
+ * the console.
+ * <p>
+ * The process can be tied to a node with
+ * {@link #bindTo(HalcyonNodeRepository, HalcyonNodeInterface)}; it is then
+ * destroyed when the node is removed. Processes still running when the JVM
+ * exits are destroyed as well.
+ */
+public class ProcessCapture implements AutoCloseable
+{
+  /** delay given to a process to terminate before it is killed */
+  public static final long cDestroyGraceMillis = 2000;
+
+  private static final int cReadBufferSize = 64 * 1024;
+
+  private static final long cBackpressureParkNanos =
+                                                   TimeUnit.MILLISECONDS.toNanos(2);
+
+  /** colors assigned in turn to processes without an explicit color */
+  private static final int[] cPalette =
+  { 0x1f77b4, 0x2ca02c, 0x9467bd, 0x8c564b, 0xe377c2, 0x17becf, 0xbcbd22 };
+
+  private static final AtomicInteger cNextColor = new AtomicInteger();
+
+  private static final Set<ProcessCapture> cLive =
+                                                 ConcurrentHashMap.newKeySet();
+
+  private static final ScheduledExecutorService cKiller =
+                                                       Executors.newSingleThreadScheduledExecutor(r -> {
+                                                         Thread lThread =
+                                                                        new Thread(r,
+                                                                                   "Process capture killer");
+                                                         lThread.setDaemon(true);
+                                                         return lThread;
+                                                       });
+
+  static
+  {
+    Thread lHook = new Thread(() -> {
+      for (ProcessCapture lCapture : cLive)
+        lCapture.mProcess.destroyForcibly();
+    }, "Process capture shutdown");
+    Runtime.getRuntime().addShutdownHook(lHook);
+  }
+
+  private final Process mProcess;
+
+  private final String mTag;
+
+  private final int mColor;
+
+  private final ConsoleIngestion mConsole;
+
+  private final int mHighWatermark;
+
+  private final int mLowWatermark;
+
+  private final AtomicInteger mOpenStreams = new AtomicInteger(2);
+
+  private final AtomicLong mStalledNanos = new AtomicLong();
+
+  private volatile Subscription mBinding;
+
+  /**
+   * Starts a process, capturing its output into a console in the next
+   * color of the palette.
+   *
+   * @param pBuilder
+   *          the process builder; its output redirections are overridden
+   * @param pTag
+   *          the tag identifying the process in the console
+   * @param pConsole
+   *          the console receiving the output
+   * @return the capture
+   * @throws IOException
+   *           if the process could not be started
+   */
+  public static ProcessCapture start(ProcessBuilder pBuilder,
+                                     String pTag,
+                                     ConsoleIngestion pConsole) throws IOException
+  {
+    final int lColor = cPalette[Math.floorMod(cNextColor.getAndIncrement(),
+                                              cPalette.length)];
+    return start(pBuilder, pTag, lColor, pConsole);
+  }
+
+  /**
+   * Starts a process, capturing its output into a console.
+   *
+   * @param pBuilder
+   *          the process builder; its output redirections are overridden
+   * @param pTag
+   *          the tag identifying the process in the console
+   * @param pColor
+   *          the RGB color of the output, or
+   *          {@link halcyon.model.console.ConsoleLine#cNoColor}
+   * @param pConsole
+   *          the console receiving the output
+   * @return the capture
+   * @throws IOException
+   *           if the process could not be started
+   */
+  public static ProcessCapture start(ProcessBuilder pBuilder,
+                                     String pTag,
+                                     int pColor,
+                                     ConsoleIngestion pConsole) throws IOException
+  {
+    pBuilder.redirectOutput(ProcessBuilder.Redirect.PIPE);
+    if (!pBuilder.redirectErrorStream())
+      pBuilder.redirectError(ProcessBuilder.Redirect.PIPE);
+
+    ProcessCapture lCapture = new ProcessCapture(pBuilder.start(),
+                                                 pTag,
+                                                 pColor,
+                                                 pConsole);
+    lCapture.startReader(lCapture.mProcess.getInputStream(),
+                         ConsoleLevel.INFO,
+                         "stdout");
+    lCapture.startReader(lCapture.mProcess.getErrorStream(),
+                         ConsoleLevel.WARN,
+                         "stderr");
+    return lCapture;
+  }
+
+  private ProcessCapture(Process pProcess,
+                         String pTag,
+                         int pColor,
+                         ConsoleIngestion pConsole)
+  {
+    mProcess = pProcess;
+    mTag = pTag;
+    mColor = pColor;
+    mConsole = pConsole;
+    mHighWatermark = Math.max(1, pConsole.getCapacity() / 2);
+    mLowWatermark = pConsole.getCapacity() / 4;
+    cLive.add(this);
+  }
+
+  /**
+   * Gets the process, e.g. to write to its standard input.
+   *
+   * @return the process
+   */
+  public Process getProcess()
+  {
+    return mProcess;
+  }
+
+  /**
+   * Gets the tag of the process.
+   *
+   * @return the tag
+   */
+  public String getTag()
+  {
+    return mTag;
+  }
+
+  /**
+   * Gets the time the readers spent waiting for the console to drain.
+   *
+   * @return the stalled time in milliseconds
+   */
+  public long getStalledMillis()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(mStalledNanos.get());
+  }
+
+  /**
+   * Ties the lifetime of the process to a node: the process is destroyed when
+   * the node is removed from the repository.
+   *
+   * @param pRepository
+   *          the repository holding the node
+   * @param pNode
+   *          the node
+   * @return this capture
+   */
+  public ProcessCapture bindTo(final HalcyonNodeRepository pRepository,
+                               final HalcyonNodeInterface pNode)
+  {
+    mBinding = pRepository.subscribe(new NodeRemovalListener(pNode));
+    if (!cLive.contains(this))
+      mBinding.close();
+    return this;
+  }
+
+  /**
+   * Waits for the process to exit.
+   *
+   * @param pTimeout
+   *          the maximum time to wait
+   * @param pUnit
+   *          the unit of the timeout
+   * @return true if the process exited
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public boolean waitFor(long pTimeout, TimeUnit pUnit) throws InterruptedException
+  {
+    return mProcess.waitFor(pTimeout, pUnit);
+  }
+
+  /**
+   * Destroys the process without waiting; it is killed if it did not
+   * terminate within {@link #cDestroyGraceMillis} milliseconds. The readers
+   * end once they consumed the remaining output.
+   */
+  @Override
+  public void close()
+  {
+    if (!mProcess.isAlive())
+      return;
+
+    mProcess.destroy();
+    cKiller.schedule(() -> {
+      if (mProcess.isAlive())
+        mProcess.destroyForcibly();
+    }, cDestroyGraceMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void startReader(final InputStream pStream,
+                           final ConsoleLevel pLevel,
+                           String pStreamName)
+  {
+    final LineDecoder lDecoder =
+                               new LineDecoder("[" + mTag + "] ",
+                                               text -> emit(pLevel, text),
+                                               LineDecoder.cDefaultPartialLineTimeoutMillis,
+                                               true);
+    Thread lReader = new Thread(() -> read(pStream, lDecoder),
+                                mTag + " " + pStreamName + " reader");
+    lReader.setDaemon(true);
+    lReader.start();
+  }
+
+  private void read(InputStream pStream, LineDecoder pDecoder)
+  {
+    final byte[] lBuffer = new byte[cReadBufferSize];
+    try
+    {
+      int lCount;
+      while (awaitRoom() && (lCount = pStream.read(lBuffer)) >= 0)
+        pDecoder.decode(lBuffer, 0, lCount);
+    }
+    catch (IOException e)
+    {
+      // the stream was closed, the process is gone
+    }
+    finally
+    {
+      pDecoder.flush();
+      try
+      {
+        pStream.close();
+      }
+      catch (IOException e)
+      {
+        e.printStackTrace();
+      }
+      if (mOpenStreams.decrementAndGet() == 0)
+        exited();
+    }
+  }
+
+  private boolean awaitRoom()
+  {
+    if (mConsole.getQueueDepth() < mHighWatermark)
+      return true;
+
+    final long lStart = System.nanoTime();
+    while (mConsole.getQueueDepth() > mLowWatermark)
+    {
+      LockSupport.parkNanos(cBackpressureParkNanos);
+      if (Thread.interrupted())
+        return false;
+    }
+    mStalledNanos.addAndGet(System.nanoTime() - lStart);
+    return true;
+  }
+
+  private void emit(ConsoleLevel pLevel, String pText)
+  {
+    ConsoleRecord lRecord = mConsole.obtainRecord().set(pLevel, mTag, pText);
+    lRecord.setColor(mColor);
+    mConsole.append(lRecord);
+  }
+
+  private void exited()
+  {
+    int lExitCode;
+    try
+    {
+      lExitCode = mProcess.waitFor();
+    }
+    catch (InterruptedException e)
+    {
+      lExitCode = -1;
+      Thread.currentThread().interrupt();
+    }
+    cLive.remove(this);
+    emit(lExitCode == 0 ? ConsoleLevel.INFO : ConsoleLevel.WARN,
+         "[" + mTag + "] exited with code " + lExitCode);
+
+    final Subscription lBinding = mBinding;
+    if (lBinding != null)
+      lBinding.close();
+  }
+
+  private class NodeRemovalListener implements
+                                   HalcyonNodeRepositoryListener
+  {
+    private final HalcyonNodeInterface mNode;
+
+    NodeRemovalListener(HalcyonNodeInterface pNode)
+    {
+      mNode = pNode;
+    }
+
+    @Override
+    public void nodeAdded(HalcyonNodeInterface node)
+    {
+    }
+
+    @Override
+    public void nodeRemoved(HalcyonNodeInterface node)
+    {
+      if (node == mNode)
+        close();
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package halcyon.view.console;
+
+import halcyon.model.console.ConsoleLevel;
+import halcyon.model.console.ConsoleRecord;
+
+/**
+ * RecordAppender interface is used for structured console output. Records
+ * are obtained from the appender, filled and handed back with
+ * {@link #append(ConsoleRecord)}, so that no record is allocated in steady
+ * state. Plain texts are adapted into records by their "[INFO]"/"[WARN]"
+ * prefix.
+ */
+public interface RecordAppender extends TextAppender
+{
+  /**
+   * Obtains a record to fill. The record must be passed to
+   * {@link #append(ConsoleRecord)} exactly once.
+   *
+   * @return the record
+   */
+  public ConsoleRecord obtainRecord();
+
+  /**
+   * Appends a record obtained from {@link #obtainRecord()}. The record
+   * belongs to the appender afterwards.
+   *
+   * @param record
+   *          the record
+   */
+  public void append(ConsoleRecord record);
+
+  /**
+   * Appends a message logged now from the current thread.
+   *
+   * @param level
+   *          the level
+   * @param source
+   *          the source, e.g. a node name, or null
+   * @param message
+   *          the message
+   */
+  default public void append(ConsoleLevel level,
+                             String source,
+                             String message)
+  {
+    append(obtainRecord().set(level, source, message));
+  }
+
+  @Override
+  default public void appendText(String text)
+  {
+    append(obtainRecord().setText(text));
+  }
+}
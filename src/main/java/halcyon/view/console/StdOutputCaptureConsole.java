@@ -1,83 +1,75 @@
 package halcyon.view.console;
 
-import java.io.IOException;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
-
+import halcyon.model.collection.Subscription;
 import halcyon.view.ConsolePane;
 
 import org.dockfx.DockNode;
 
 /**
- * Standard Output and Error capture console
+ * Standard Output and Error capture console. The standard streams are
+ * captured once for all consoles by {@link StdStreamCapture}; capturing them is
+ * optional: loggers can feed the console directly through
+ * {@link ConsoleLogHandler} or {@link ConsoleLog4jAppender} attached to
+ * {@link #getConsolePane()}.
  */
 public class StdOutputCaptureConsole extends DockNode
 {
 	private final ConsolePane consolePane;
 
+	private Subscription subscription;
+
 	/**
 	 * Instantiates a new Standard output/error capture console.
 	 */
 	public StdOutputCaptureConsole()
 	{
-		super( new ConsolePane(null) );
+		this( ConsolePane.Mode.WebView );
+	}
+
+	/**
+	 * Instantiates a new Standard output/error capture console.
+	 * @param mode the rendering mode of the console
+	 */
+	public StdOutputCaptureConsole( ConsolePane.Mode mode )
+	{
+		this( mode, true );
+	}
+
+	/**
+	 * Instantiates a new console.
+	 * @param mode the rendering mode of the console
+	 * @param captureStandardStreams whether System.out and System.err are redirected to the console
+	 */
+	public StdOutputCaptureConsole( ConsolePane.Mode mode, boolean captureStandardStreams )
+	{
+		super( new ConsolePane( null, mode ) );
 		setTitle( "Console" );
 
 		consolePane = ( ConsolePane ) getContents();
 
-		try
-		{
-			System.setOut( new StreamAppender( "INFO", consolePane, System.out ) );
-			System.setErr( new StreamAppender( "WARN", consolePane, System.err ) );
-		}
-		catch ( UnsupportedEncodingException e )
-		{
-			e.printStackTrace();
-		}
+		if ( captureStandardStreams )
+			subscription = StdStreamCapture.install().subscribe( consolePane );
 	}
 
 	/**
-	 * The Stream appender for output stream.
+	 * Stops receiving the captured standard streams. The streams stay
+	 * redirected for the other consoles.
 	 */
-	public class StreamAppender extends PrintStream
+	public void detach()
 	{
-		final private StringBuilder buffer;
-		final private String prefix;
-		final private TextAppender textAppender;
-
-		StreamAppender( String prefix, TextAppender consumer, PrintStream old ) throws UnsupportedEncodingException
+		if ( subscription != null )
 		{
-			super( old, true, "UTF-8" );
-
-			this.prefix = prefix;
-			this.buffer = new StringBuilder( 128 );
-			buffer.append( "[" ).append( prefix ).append( "] " );
-			this.textAppender = consumer;
+			subscription.close();
+			subscription = null;
 		}
+	}
 
-		@Override
-		public void write( byte buf[], int off, int len )
-		{
-			try
-			{
-				String string = new String( buf, off, len );
-				buffer.append( string );
-
-				if ( string.endsWith( System.lineSeparator() ) )
-				{
-					String outString = buffer.toString();
-					textAppender.appendText( outString );
-
-					buffer.delete( 0, buffer.length() );
-					buffer.append( "[" ).append( prefix ).append( "] " );
-				}
-
-				out.write( buf, off, len );
-			}
-			catch ( IOException e )
-			{
-				e.printStackTrace();
-			}
-		}
+	/**
+	 * Gets the console pane, e.g. to attach a logging handler to it.
+	 * @return the console pane
+	 */
+	public ConsolePane getConsolePane()
+	{
+		return consolePane;
 	}
 }
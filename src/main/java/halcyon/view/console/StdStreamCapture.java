@@ -0,0 +1,244 @@
+package halcyon.view.console;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import halcyon.model.collection.Subscription;
+import halcyon.model.console.ConsoleFilter;
+import halcyon.model.console.ConsoleLevel;
+
+/**
+ * Process-wide capture of the standard output and error streams. The hub
+ * redirects System.out and System.err once, decodes the captured bytes once
+ * and hands every line to all subscribed consoles, each of which buffers the
+ * lines in its own ingestion stage. Subscribers can come and go without
+ * touching the redirected streams, so there is never a chain of captures to
+ * restore.
+ * <p>
+ * The captured bytes are still passed through to the original streams, but
+ * through an {@link AsyncOutputStream}: a slow terminal or pipe never blocks
+ * the threads that print.
+ */
+public class StdStreamCapture
+{
+  private static StdStreamCapture cInstance;
+
+  private final CopyOnWriteArrayList<Registration> mSubscriptions =
+                                                                  new CopyOnWriteArrayList<>();
+
+  private final PrintStream mOriginalOut;
+  private final PrintStream mOriginalErr;
+
+  private final AsyncOutputStream mOutPassThrough;
+  private final AsyncOutputStream mErrPassThrough;
+
+  private final CapturingStream mOut;
+  private final CapturingStream mErr;
+
+  private StdStreamCapture() throws UnsupportedEncodingException
+  {
+    mOriginalOut = System.out;
+    mOriginalErr = System.err;
+    mOutPassThrough = new AsyncOutputStream(mOriginalOut,
+                                            "Standard output pass-through");
+    mErrPassThrough = new AsyncOutputStream(mOriginalErr,
+                                            "Standard error pass-through");
+    mOut = new CapturingStream(ConsoleLevel.INFO, mOutPassThrough);
+    mErr = new CapturingStream(ConsoleLevel.WARN, mErrPassThrough);
+  }
+
+  /**
+   * Redirects the standard streams, unless already done, and returns the hub.
+   *
+   * @return the capture hub
+   */
+  public static synchronized StdStreamCapture install()
+  {
+    if (cInstance == null)
+    {
+      try
+      {
+        cInstance = new StdStreamCapture();
+      }
+      catch (UnsupportedEncodingException e)
+      {
+        throw new IllegalStateException(e);
+      }
+      System.setOut(cInstance.mOut);
+      System.setErr(cInstance.mErr);
+    }
+    return cInstance;
+  }
+
+  /**
+   * Restores the standard streams found at installation, if they were not
+   * replaced since. Pending partial lines are emitted and pending pass-through
+   * bytes are written first.
+   */
+  public static synchronized void uninstall()
+  {
+    if (cInstance == null)
+      return;
+
+    cInstance.mOut.mDecoder.flush();
+    cInstance.mErr.mDecoder.flush();
+    cInstance.mOutPassThrough.close();
+    cInstance.mErrPassThrough.close();
+    if (System.out == cInstance.mOut)
+      System.setOut(cInstance.mOriginalOut);
+    if (System.err == cInstance.mErr)
+      System.setErr(cInstance.mOriginalErr);
+    cInstance = null;
+  }
+
+  /**
+   * Subscribes to all captured lines.
+   *
+   * @param pAppender
+   *          receives the lines
+   * @return the subscription
+   */
+  public Subscription subscribe(TextAppender pAppender)
+  {
+    return subscribe(pAppender, null);
+  }
+
+  /**
+   * Subscribes to the captured lines matching a filter. Lines from standard
+   * output have the INFO level, lines from standard error the WARN level.
+   * {@link RecordAppender}s receive the lines as records; other appenders
+   * receive them with an "[INFO] " or "[WARN] " prefix.
+   *
+   * @param pAppender
+   *          receives the lines
+   * @param pFilter
+   *          the filter, or null for all lines
+   * @return the subscription
+   */
+  public Subscription subscribe(TextAppender pAppender,
+                                ConsoleFilter pFilter)
+  {
+    Registration lRegistration = new Registration(pAppender, pFilter);
+    mSubscriptions.add(lRegistration);
+    return lRegistration;
+  }
+
+  /**
+   * Gets the number of subscribers.
+   *
+   * @return the number of subscribers
+   */
+  public int getSubscriberCount()
+  {
+    return mSubscriptions.size();
+  }
+
+  /**
+   * Gets the number of bytes that could not be passed through to the original
+   * streams because they were too slow.
+   *
+   * @return the number of dropped bytes
+   */
+  public long getDroppedPassThroughBytes()
+  {
+    return mOutPassThrough.getDroppedBytes()
+           + mErrPassThrough.getDroppedBytes();
+  }
+
+  private void publish(ConsoleLevel pLevel, String pText)
+  {
+    for (Registration lRegistration : mSubscriptions)
+      lRegistration.deliver(pLevel, pText);
+  }
+
+  /**
+   * Registration of an appender with the hub.
+   */
+  private class Registration implements Subscription
+  {
+    private final TextAppender mAppender;
+    private final ConsoleFilter mFilter;
+
+    Registration(TextAppender pAppender, ConsoleFilter pFilter)
+    {
+      mAppender = pAppender;
+      mFilter = pFilter;
+    }
+
+    void deliver(ConsoleLevel pLevel, String pText)
+    {
+      if (mFilter != null && !mFilter.matches(pLevel, pText))
+        return;
+
+      if (mAppender instanceof RecordAppender)
+        ((RecordAppender) mAppender).append(pLevel, null, pText);
+      else
+        mAppender.appendText("[" + pLevel + "] " + pText);
+    }
+
+    /**
+     * Stops delivering lines to the appender.
+     */
+    @Override
+    public void close()
+    {
+      mSubscriptions.remove(this);
+    }
+
+    @Override
+    public boolean isActive()
+    {
+      return mSubscriptions.contains(this);
+    }
+  }
+
+  /**
+   * Replacement of a standard stream. Written bytes are decoded as UTF-8 and
+   * split into lines by a {@link LineDecoder}, then passed through to the
+   * original stream asynchronously.
+   */
+  private class CapturingStream extends PrintStream
+  {
+    private final LineDecoder mDecoder;
+    private final byte[] mSingle = new byte[1];
+
+    CapturingStream(ConsoleLevel pLevel, AsyncOutputStream pPassThrough) throws UnsupportedEncodingException
+    {
+      super(pPassThrough, true, "UTF-8");
+      mDecoder = new LineDecoder("", text -> publish(pLevel, text));
+    }
+
+    @Override
+    public void write(int b)
+    {
+      synchronized (this)
+      {
+        mSingle[0] = (byte) b;
+        write(mSingle, 0, 1);
+      }
+    }
+
+    @Override
+    public void write(byte[] pBuffer, int pOffset, int pLength)
+    {
+      // locked like PrintStream so that chunks are decoded and passed through
+      // in the same order
+      synchronized (this)
+      {
+        try
+        {
+          mDecoder.decode(pBuffer, pOffset, pLength);
+
+          out.write(pBuffer, pOffset, pLength);
+        }
+        catch (IOException e)
+        {
+          // reported like PrintStream does, printing it would write here again
+          setError();
+        }
+      }
+    }
+  }
+}
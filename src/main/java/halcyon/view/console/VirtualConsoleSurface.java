@@ -0,0 +1,335 @@
+package halcyon.view.console;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.scene.Node;
+import javafx.scene.control.ListView;
+
+import halcyon.model.console.ConsoleFilter;
+import halcyon.model.console.ConsoleHistory;
+import halcyon.model.console.ConsoleLine;
+import halcyon.model.console.ConsoleLineBuffer;
+import halcyon.model.console.ConsoleLineStore;
+
+/**
+ * Console surface backed by a {@link ConsoleLineStore} and rendered through a
+ * virtualized {@link ListView}: only the visible rows exist in the scene
+ * graph, so the rendering cost does not depend on the scrollback size.
+ * <p>
+ * A {@link ConsoleFilter} can be applied: the history is searched through its
+ * index on a background thread, and the list then shows a view over the
+ * matching line numbers that is extended as new lines arrive.
+ */
+public class VirtualConsoleSurface implements FilterableConsoleSurface
+{
+  /** default number of lines kept as scrollback */
+  public static final int cDefaultCapacity = 1 << 20;
+
+  private static final double cCellHeight = 20;
+
+  private static final ExecutorService cFilterExecutor =
+                                                      Executors.newSingleThreadExecutor(r -> {
+                                                        Thread lThread =
+                                                                       new Thread(r,
+                                                                                  "Console filter");
+                                                        lThread.setDaemon(true);
+                                                        return lThread;
+                                                      });
+
+  private final ConsoleHistory mHistory;
+
+  private final LineList mItems = new LineList();
+
+  private ConsoleFilter mFilter;
+
+  /** results of the current filter, null while it is being computed */
+  private MatchList mMatches;
+
+  private volatile int mFilterGeneration = 0;
+
+  private final ListView<ConsoleLine> mListView;
+
+  /**
+   * Instantiates a new virtualized console surface with the default capacity.
+   */
+  public VirtualConsoleSurface()
+  {
+    this(cDefaultCapacity);
+  }
+
+  /**
+   * Instantiates a new virtualized console surface over a ring buffer.
+   * 
+   * @param pCapacity
+   *          the number of lines kept as scrollback
+   */
+  public VirtualConsoleSurface(int pCapacity)
+  {
+    this(new ConsoleLineBuffer(pCapacity));
+  }
+
+  /**
+   * Instantiates a new virtualized console surface.
+   * 
+   * @param pStore
+   *          the store holding the scrollback
+   */
+  public VirtualConsoleSurface(ConsoleLineStore pStore)
+  {
+    mHistory = new ConsoleHistory(pStore);
+
+    mListView = new ListView<>(mItems);
+    mListView.getStyleClass().add("console-list-view");
+    mListView.getStylesheets()
+             .add(VirtualConsoleSurface.class.getResource("ConsoleOutput_ListView.css")
+                                             .toExternalForm());
+    mListView.setFixedCellSize(cCellHeight);
+    mListView.setFocusTraversable(false);
+    mListView.setCellFactory(list -> new ConsoleLineCell());
+  }
+
+  @Override
+  public Node getNode()
+  {
+    return mListView;
+  }
+
+  @Override
+  public void append(List<ConsoleLine> lines)
+  {
+    if (lines.isEmpty())
+      return;
+
+    final long lEnd = mHistory.getEndIndex();
+    final int lSize = mHistory.size();
+    final int lEvicted = mHistory.addAll(lines);
+    mItems.fireAppended(lEvicted, mHistory.size() - (lSize - lEvicted));
+
+    if (mMatches != null)
+      mMatches.update(lEnd);
+  }
+
+  @Override
+  public void clear()
+  {
+    final int lSize = mHistory.size();
+    mHistory.clear();
+    mItems.fireRemoved(lSize);
+
+    if (mMatches != null)
+      mMatches.update(mHistory.getEndIndex());
+  }
+
+  @Override
+  public void close()
+  {
+    ++mFilterGeneration;
+    final int lSize = mHistory.size();
+    mHistory.close();
+    mItems.fireRemoved(lSize);
+    mMatches = null;
+    mListView.setItems(mItems);
+  }
+
+  @Override
+  public void scrollToEnd()
+  {
+    final int lSize = mListView.getItems().size();
+    if (lSize > 0)
+      mListView.scrollTo(lSize - 1);
+  }
+
+  @Override
+  public boolean isAtEnd()
+  {
+    final int lLast = mListView.getItems().size() - 1;
+    if (lLast < 0)
+      return true;
+
+    // only the cells of the visible rows are shown, so this is cheap
+    boolean lHasCells = false;
+    for (Node lNode : mListView.lookupAll(".list-cell"))
+    {
+      if (!(lNode instanceof ConsoleLineCell) || !lNode.isVisible())
+        continue;
+      lHasCells = true;
+      if (((ConsoleLineCell) lNode).getIndex() >= lLast)
+        return true;
+    }
+    // not laid out yet
+    return !lHasCells;
+  }
+
+  @Override
+  public void refresh(ConsoleLine line)
+  {
+    // only the visible cells are rebuilt
+    mListView.refresh();
+  }
+
+  @Override
+  public void setFilter(ConsoleFilter filter)
+  {
+    final int lGeneration = ++mFilterGeneration;
+    mFilter = filter;
+    mMatches = null;
+
+    if (filter == null)
+    {
+      mListView.setItems(mItems);
+      scrollToEnd();
+      return;
+    }
+
+    final long lEnd = mHistory.getEndIndex();
+    cFilterExecutor.execute(() -> {
+      long[] lMatches = mHistory.filter(filter,
+                                        lEnd,
+                                        () -> mFilterGeneration != lGeneration);
+      if (lMatches == null)
+        return;
+
+      Platform.runLater(() -> {
+        if (mFilterGeneration != lGeneration)
+          return;
+
+        mMatches = new MatchList(lMatches);
+        // catch up with the lines appended during the search
+        mMatches.update(lEnd);
+        mListView.setItems(mMatches);
+        scrollToEnd();
+      });
+    });
+  }
+
+  /**
+   * Read-only observable view of the history.
+   */
+  private class LineList extends ObservableListBase<ConsoleLine>
+  {
+    @Override
+    public ConsoleLine get(int index)
+    {
+      return mHistory.get(index);
+    }
+
+    @Override
+    public int size()
+    {
+      return mHistory.size();
+    }
+
+    void fireAppended(int pEvicted, int pAdded)
+    {
+      beginChange();
+      if (pEvicted > 0)
+        nextRemove(0, removed(pEvicted));
+      if (pAdded > 0)
+        nextAdd(size() - pAdded, size());
+      endChange();
+    }
+
+    void fireRemoved(int pRemoved)
+    {
+      if (pRemoved == 0)
+        return;
+
+      beginChange();
+      nextRemove(0, removed(pRemoved));
+      endChange();
+    }
+
+    /**
+     * Evicted lines may no longer be readable from the store (e.g. dropped
+     * cold segments), so removals are reported with placeholder items.
+     */
+    private List<ConsoleLine> removed(int pCount)
+    {
+      return Collections.nCopies(pCount, (ConsoleLine) null);
+    }
+  }
+
+  /**
+   * Read-only observable view of the lines matching the current filter,
+   * holding only their absolute line numbers.
+   */
+  private class MatchList extends ObservableListBase<ConsoleLine>
+  {
+    private long[] mIndices;
+    private int mHead = 0;
+    private int mTail;
+
+    MatchList(long[] pIndices)
+    {
+      mIndices = pIndices;
+      mTail = pIndices.length;
+    }
+
+    @Override
+    public ConsoleLine get(int index)
+    {
+      if (index < 0 || index >= size())
+        throw new IndexOutOfBoundsException("Index: " + index);
+      return mHistory.getAbsolute(mIndices[mHead + index]);
+    }
+
+    @Override
+    public int size()
+    {
+      return mTail - mHead;
+    }
+
+    /**
+     * Drops the matches evicted from the history and tests the lines appended
+     * from the given line number on.
+     */
+    void update(long pFrom)
+    {
+      final long lFirst = mHistory.getFirstIndex();
+      int lRemoved = 0;
+      while (mHead + lRemoved < mTail
+             && mIndices[mHead + lRemoved] < lFirst)
+        lRemoved++;
+
+      final int lOldTail = mTail;
+      final long lEnd = mHistory.getEndIndex();
+      for (long i = Math.max(pFrom, lFirst); i < lEnd; i++)
+      {
+        final ConsoleLine lLine = mHistory.getAbsolute(i);
+        if (lLine == null || !mFilter.matches(lLine))
+          continue;
+        if (mTail == mIndices.length)
+          mIndices = Arrays.copyOf(mIndices,
+                                   Math.max(16, mIndices.length * 2));
+        mIndices[mTail++] = i;
+      }
+      final int lAdded = mTail - lOldTail;
+
+      if (lRemoved == 0 && lAdded == 0)
+        return;
+
+      mHead += lRemoved;
+      beginChange();
+      if (lRemoved > 0)
+        nextRemove(0, Collections.nCopies(lRemoved, (ConsoleLine) null));
+      if (lAdded > 0)
+        nextAdd(size() - lAdded, size());
+      endChange();
+
+      // compact once the dropped prefix dominates
+      if (mHead > size())
+      {
+        mIndices = Arrays.copyOfRange(mIndices,
+                                      mHead,
+                                      Math.max(mTail, mHead + 16));
+        mTail -= mHead;
+        mHead = 0;
+      }
+    }
+  }
+}
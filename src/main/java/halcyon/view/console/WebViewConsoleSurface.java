@@ -0,0 +1,223 @@
+package halcyon.view.console;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Worker;
+import javafx.scene.Node;
+import javafx.scene.layout.Region;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+
+import halcyon.model.console.ConsoleLevel;
+import halcyon.model.console.ConsoleLine;
+import halcyon.view.ConsolePane;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Text;
+
+/**
+ * Console surface rendering one DOM element per line into a WebView.
+ */
+public class WebViewConsoleSurface implements ConsoleSurface
+{
+  private static final long cCheckPeriod = 1_000_000_000;
+  private long mLastCheck = System.nanoTime();
+
+  // It remains more than 1024 lines at some point
+  private static final int maxItems = 4096;
+  private final List<ConsoleOutputEntry> entries =
+                                                 new ArrayList<ConsoleOutputEntry>(1024);
+
+  private ConsoleLine lastLine;
+  private ConsoleOutputEntry lastEntry;
+
+  private final WebView web;
+  private final WebEngine engine;
+
+  /**
+   * Instantiates a new WebView console surface.
+   * 
+   * @param pOwner
+   *          the region the WebView is sized against
+   * @param pOnReady
+   *          invoked once the document has been loaded
+   */
+  public WebViewConsoleSurface(Region pOwner, Runnable pOnReady)
+  {
+    web = new WebView();
+    engine = web.getEngine();
+    engine.setUserStyleSheetLocation(ConsolePane.class.getResource("ConsoleOutput_WebView.css")
+                                                      .toString());
+    engine.getLoadWorker()
+          .stateProperty()
+          .addListener(new ChangeListener<Worker.State>()
+          {
+            @Override
+            public void changed(ObservableValue<? extends Worker.State> observable,
+                                Worker.State oldValue,
+                                Worker.State newValue)
+            {
+              if (newValue == Worker.State.SUCCEEDED)
+              {
+                observable.removeListener(this);
+                pOnReady.run();
+              }
+            }
+          });
+    engine.loadContent("<html><head><meta http-equiv=\"content-type\" content=\"text/html; charset=UTF-8\"></head><body><pre></pre></body></html>");
+
+    web.prefWidthProperty().bind(pOwner.widthProperty());
+    web.maxHeightProperty().bind(pOwner.heightProperty());
+    web.setFocusTraversable(false);
+  }
+
+  @Override
+  public Node getNode()
+  {
+    return web;
+  }
+
+  @Override
+  public void append(List<ConsoleLine> lines)
+  {
+    controlSize();
+
+    // build the batch off-document and insert it with a single DOM mutation
+    Document doc = engine.getDocument();
+    DocumentFragment fragment = doc.createDocumentFragment();
+    for (ConsoleLine line : lines)
+      fragment.appendChild(createTextEntry(doc, line));
+
+    doc.getElementsByTagName("pre").item(0).appendChild(fragment);
+  }
+
+  @Override
+  public void refresh(ConsoleLine line)
+  {
+    if (line != lastLine || lastEntry.entryNode == null)
+      return;
+
+    if (lastEntry.repeatNode == null)
+    {
+      Document doc = engine.getDocument();
+      Element repeatNode = doc.createElement("span");
+      repeatNode.setAttribute("class", "entry-repeat");
+      lastEntry.repeatNode = doc.createTextNode("");
+      repeatNode.appendChild(lastEntry.repeatNode);
+      lastEntry.entryNode.appendChild(repeatNode);
+    }
+    lastEntry.repeatNode.setData("  (\u00d7" + line.getRepeatCount() + ")");
+  }
+
+  @Override
+  public void clear()
+  {
+    List<ConsoleOutputEntry> toRemoved = new ArrayList<>(entries);
+    entries.clear();
+    lastLine = null;
+    lastEntry = null;
+
+    runDeleteTask(toRemoved);
+  }
+
+  @Override
+  public void scrollToEnd()
+  {
+    engine.executeScript("window.scrollTo(0, document.body.scrollHeight);");
+  }
+
+  @Override
+  public boolean isAtEnd()
+  {
+    Object lAtEnd =
+                  engine.executeScript("window.innerHeight + window.pageYOffset >= document.body.scrollHeight - 2;");
+    return !(lAtEnd instanceof Boolean) || (Boolean) lAtEnd;
+  }
+
+  private Element createTextEntry(Document doc, ConsoleLine line)
+  {
+    ConsoleOutputEntry entry = new ConsoleOutputEntry();
+    entries.add(entry);
+
+    Element entryNode = doc.createElement("div");
+
+    Text textNode = doc.createTextNode(line.getText());
+
+    entryNode.appendChild(textNode);
+
+    entry.entryNode = entryNode;
+    entry.textNode = textNode;
+    lastLine = line;
+    lastEntry = entry;
+
+    if (line.getRepeatCount() > 1)
+      refresh(line);
+
+    String className = "entry-text";
+    if (line.getLevel() != ConsoleLevel.INFO)
+    {
+      className += ' ' + line.getLevel().getStyleClass();
+    }
+    entryNode.setAttribute("class", className);
+
+    if (line.getColor() != ConsoleLine.cNoColor)
+    {
+      entryNode.setAttribute("style",
+                             "color: #" + Integer.toHexString(line.getColor()));
+    }
+
+    return entryNode;
+  }
+
+  private void runDeleteTask(Collection<ConsoleOutputEntry> toRemoved)
+  {
+    Document doc = engine.getDocument();
+    org.w3c.dom.Node body = doc.getElementsByTagName("pre").item(0);
+
+    for (ConsoleOutputEntry entry : toRemoved)
+    {
+      body.removeChild(entry.entryNode);
+      entry.dispose();
+    }
+  }
+
+  private void controlSize()
+  {
+    final long lTimeNow = System.nanoTime();
+
+    if (lTimeNow > mLastCheck + cCheckPeriod)
+    {
+      if (entries.size() > maxItems)
+      {
+        List<ConsoleOutputEntry> toRemoved =
+                                           new ArrayList<>(entries.subList(0,
+                                                                           entries.size()
+                                                                              - maxItems));
+        entries.subList(0, entries.size() - maxItems).clear();
+
+        runDeleteTask(toRemoved);
+      }
+
+      mLastCheck = lTimeNow;
+    }
+  }
+
+  private class ConsoleOutputEntry
+  {
+    public Element entryNode;
+    public Text textNode;
+    public Text repeatNode;
+
+    public void dispose()
+    {
+      entryNode = null;
+      textNode = null;
+      repeatNode = null;
+    }
+  }
+}